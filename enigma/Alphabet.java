@@ -1,6 +1,6 @@
 package enigma;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
@@ -14,21 +14,29 @@ class Alphabet {
         if (chars.length() == 0) {
             throw new EnigmaException("Alphabet cannot be empty.");
         }
+        StringBuilder kept = new StringBuilder();
         for (char c : chars.toCharArray()) {
+            if (Character.isSurrogate(c)) {
+                throw new EnigmaException(
+                        "Alphabet characters must be in the Basic "
+                        + "Multilingual Plane.");
+            }
             if (Character.isDigit(c)
                     || Character.isLetter(c)
                     || c == '_' || c == '.') {
-                if (_charArray.contains(c)) {
+                if (kept.indexOf(String.valueOf(c)) >= 0) {
                     throw new EnigmaException(
                             "No character may be duplicated.");
                 } else {
-                    _charArray.add(c);
+                    kept.append(c);
                 }
             }
         }
-        _chars = _charArray.toString()
-                .substring(1, 3 * _charArray.size() - 1)
-                .replaceAll(", ", "");
+        if (kept.length() == 0) {
+            throw new EnigmaException("Alphabet cannot be empty.");
+        }
+        _chars = kept.toString();
+        buildIndex();
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -36,6 +44,120 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** An alphabet containing exactly CHARS, which are all distinct, in
+     *  which characters are written as hex byte values iff BYTES. */
+    private Alphabet(String chars, boolean bytes) {
+        _chars = chars;
+        _bytes = bytes;
+        buildIndex();
+    }
+
+    /** Return the alphabet of all BYTES byte values, in which the
+     *  character with code K, for 0 <= K < BYTES, has index K.  In
+     *  configurations and setting lines each of its characters is
+     *  written as two hex digits (see decode). */
+    static Alphabet bytes() {
+        char[] chars = new char[BYTES];
+        for (int k = 0; k < BYTES; k += 1) {
+            chars[k] = (char) k;
+        }
+        return new Alphabet(new String(chars), true);
+    }
+
+    /** Return the alphabet whose characters are exactly CHARS, in order:
+     *  bytes() if CHARS are those of the byte alphabet, and otherwise
+     *  new Alphabet(CHARS). */
+    static Alphabet of(String chars) {
+        Alphabet bytes = bytes();
+        return chars.equals(bytes._chars) ? bytes : new Alphabet(chars);
+    }
+
+    /** Return true iff I am the byte alphabet, so that the index of each
+     *  of my characters is its byte value. */
+    boolean isBytes() {
+        return _bytes;
+    }
+
+    /** Return the characters written as TEXT in a configuration or
+     *  setting line.  Each character of the byte alphabet is written as
+     *  two hex digits; those of any other alphabet are written as
+     *  themselves. */
+    String decode(String text) {
+        if (!_bytes) {
+            return text;
+        }
+        if (text.length() % 2 != 0) {
+            throw new EnigmaException(
+                    "Bytes must be written as pairs of hex digits.");
+        }
+        char[] result = new char[text.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int hi = Character.digit(text.charAt(2 * i), HEX),
+                lo = Character.digit(text.charAt(2 * i + 1), HEX);
+            if (hi < 0 || lo < 0) {
+                throw new EnigmaException(
+                        "Bytes must be written as pairs of hex digits.");
+            }
+            result[i] = (char) (hi * HEX + lo);
+        }
+        return new String(result);
+    }
+
+    /** Fill in either _dense (when my characters occupy a narrow range of
+     *  the BMP) or the open-addressed _hashKeys/_hashValues table, so that
+     *  contains() and toInt() take constant time.  _chars must not be
+     *  empty. */
+    private void buildIndex() {
+        int lo = Character.MAX_VALUE, hi = Character.MIN_VALUE;
+        for (int i = 0; i < _chars.length(); i += 1) {
+            lo = Math.min(lo, _chars.charAt(i));
+            hi = Math.max(hi, _chars.charAt(i));
+        }
+        int span = hi - lo + 1;
+        if (span <= DENSE_LIMIT || span <= DENSE_FACTOR * _chars.length()) {
+            _base = lo;
+            _dense = new int[span];
+            Arrays.fill(_dense, -1);
+            for (int i = 0; i < _chars.length(); i += 1) {
+                _dense[_chars.charAt(i) - lo] = i;
+            }
+        } else {
+            int cap = Integer.highestOneBit(_chars.length() * 2 - 1) << 1;
+            _hashKeys = new char[cap];
+            _hashValues = new int[cap];
+            Arrays.fill(_hashValues, -1);
+            for (int i = 0; i < _chars.length(); i += 1) {
+                char c = _chars.charAt(i);
+                int h = slot(c);
+                while (_hashValues[h] >= 0) {
+                    h = (h + 1) & (cap - 1);
+                }
+                _hashKeys[h] = c;
+                _hashValues[h] = i;
+            }
+        }
+    }
+
+    /** Return the home slot of CH in the hash table. */
+    private int slot(char ch) {
+        return (ch * HASH_MULTIPLIER >>> HASH_SHIFT) & (_hashKeys.length - 1);
+    }
+
+    /** Return the index of CH, or -1 if CH is not in this alphabet. */
+    private int indexOf(char ch) {
+        if (_dense != null) {
+            int k = ch - _base;
+            return k >= 0 && k < _dense.length ? _dense[k] : -1;
+        }
+        int mask = _hashKeys.length - 1;
+        for (int h = slot(ch); _hashValues[h] >= 0; h = (h + 1) & mask) {
+            if (_hashKeys[h] == ch) {
+                return _hashValues[h];
+            }
+        }
+        return -1;
+    }
+
     /** Returns the size of the alphabet. */
     int size() {
         return _chars.length();
@@ -43,12 +165,7 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        for (int i = 0; i < _chars.length(); i += 1) {
-            if (_chars.charAt(i) == ch) {
-                return true;
-            }
-        }
-        return false;
+        return indexOf(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -65,17 +182,49 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        if (contains(ch)) {
-            return _chars.indexOf(ch);
+        int result = indexOf(ch);
+        if (result >= 0) {
+            return result;
         } else {
             throw new EnigmaException("character not in the alphabet.");
         }
     }
 
+    /** Number of characters in the byte alphabet. */
+    static final int BYTES = 256;
+
+    /** Radix of the written form of bytes. */
+    private static final int HEX = 16;
+
+    /** Widest character range always given a dense index. */
+    private static final int DENSE_LIMIT = 1024;
+
+    /** Wider ranges stay dense while at most this many slots per
+     *  character. */
+    private static final int DENSE_FACTOR = 8;
+
+    /** Fibonacci hashing multiplier for the sparse table. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    /** Shift applied after multiplying by HASH_MULTIPLIER. */
+    private static final int HASH_SHIFT = 16;
+
     /** String to store characters. */
     private String _chars;
 
-    /** Array to store letters. */
-    private ArrayList<Character> _charArray = new ArrayList<>();
+    /** True iff I am the byte alphabet. */
+    private boolean _bytes;
+
+    /** Smallest character in the alphabet; _dense[0] describes it. */
+    private int _base;
+
+    /** _dense[c - _base] is the index of c, or -1; null when sparse. */
+    private int[] _dense;
+
+    /** Keys of the sparse index, with linear probing. */
+    private char[] _hashKeys;
+
+    /** Indices matching _hashKeys, -1 in empty slots. */
+    private int[] _hashValues;
 
 }
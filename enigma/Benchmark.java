@@ -0,0 +1,508 @@
+package enigma;
+
+import com.sun.management.ThreadMXBean;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static enigma.EnigmaException.error;
+
+/** Throughput benchmarks for the enigma package.  Each benchmark is run
+ *  repeatedly for a warm-up period and then for a number of timed
+ *  iterations, and is reported in operations (characters, for the
+ *  machine benchmarks) per second, as the median over the iterations,
+ *  and in bytes allocated per operation by the benchmarking thread.
+ *
+ *  Usage: java enigma.Benchmark [OPTION ...] [NAME ...]
+ *  runs the benchmarks whose names contain one of the NAMEs (all of them
+ *  if there are none) for every combination of the parameters given by
+ *  the options:
+ *    --size N,...     alphabet sizes (default 26,62,256);
+ *    --rotors N,...   rotor slots (default 5);
+ *    --pawls N,...    pawls (default 3);
+ *    --iterations N   timed iterations (default 5);
+ *    --millis N       length of each iteration and of the warm-up
+ *                     period in milliseconds (default 500).
+ *  All inputs come from generated configurations and corpora that
+ *  depend only on the parameters, so runs are comparable.
+ *  @author Yulan Rong
+ */
+public final class Benchmark {
+
+    /** Run the benchmarks selected by ARGS (see the class comment). */
+    public static void main(String... args) {
+        try {
+            new Benchmark(args).run();
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A benchmark run as specified by ARGS. */
+    Benchmark(String[] args) {
+        for (int i = 0; i < args.length; i += 1) {
+            if (!args[i].startsWith("--")) {
+                _names.add(args[i]);
+            } else if (i + 1 == args.length) {
+                throw error("%s needs a value", args[i]);
+            } else {
+                i += 1;
+                switch (args[i - 1]) {
+                case "--size":
+                    _sizes = numbers(args[i]);
+                    break;
+                case "--rotors":
+                    _rotors = numbers(args[i]);
+                    break;
+                case "--pawls":
+                    _pawls = numbers(args[i]);
+                    break;
+                case "--iterations":
+                    _iterations = numbers(args[i])[0];
+                    break;
+                case "--millis":
+                    _millis = numbers(args[i])[0];
+                    break;
+                default:
+                    throw error("unknown option: %s", args[i - 1]);
+                }
+            }
+        }
+    }
+
+    /** Return the positive numbers in the comma-separated list LIST. */
+    private static int[] numbers(String list) {
+        if (!list.matches("[1-9]\\d*(,[1-9]\\d*)*")) {
+            throw error("bad number list: %s", list);
+        }
+        return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt)
+            .toArray();
+    }
+
+    /** Run all selected benchmarks, printing a line for each. */
+    void run() {
+        System.out.printf("%-16s %-30s %14s %12s%n",
+                          "benchmark", "parameters", "ops/s", "bytes/op");
+        for (int size : _sizes) {
+            Alphabet alpha = alphabet(size);
+            String params = String.format("size=%d", size);
+            componentBenchmarks(alpha, params);
+            for (int rotors : _rotors) {
+                for (int pawls : _pawls) {
+                    if (pawls < rotors) {
+                        machineBenchmarks(alpha, rotors, pawls,
+                            String.format("%s rotors=%d pawls=%d",
+                                          params, rotors, pawls));
+                    }
+                }
+            }
+        }
+    }
+
+    /** Run the benchmarks of single Permutations, Alphabets and Rotors
+     *  over ALPHA, described by PARAMS. */
+    private void componentBenchmarks(Alphabet alpha, String params) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        int size = alpha.size();
+        Permutation perm = new Permutation(cycles(alpha, random), alpha);
+        Rotor rotor = new MovingRotor("R", perm, String.valueOf(
+                alpha.toChar(random.nextInt(size))));
+        rotor.set(random.nextInt(size));
+        int[] indices = new int[BATCH];
+        for (int i = 0; i < BATCH; i += 1) {
+            indices[i] = random.nextInt(size);
+        }
+        char[] chars = corpus(alpha, BATCH, SEED).toCharArray();
+
+        measure("permute", params, BATCH, () -> {
+            long sum = 0;
+            for (int p : indices) {
+                sum += perm.permute(p);
+            }
+            return sum;
+        });
+        measure("invert", params, BATCH, () -> {
+            long sum = 0;
+            for (int p : indices) {
+                sum += perm.invert(p);
+            }
+            return sum;
+        });
+        measure("toInt", params, BATCH, () -> {
+            long sum = 0;
+            for (char c : chars) {
+                sum += alpha.toInt(c);
+            }
+            return sum;
+        });
+        measure("convertForward", params, BATCH, () -> {
+            long sum = 0;
+            for (int p : indices) {
+                sum += rotor.convertForward(p);
+            }
+            return sum;
+        });
+        measure("convertBackward", params, BATCH, () -> {
+            long sum = 0;
+            for (int p : indices) {
+                sum += rotor.convertBackward(p);
+            }
+            return sum;
+        });
+    }
+
+    /** Run the benchmarks of whole machines with alphabet ALPHA, ROTORS
+     *  slots and PAWLS pawls, described by PARAMS.  The main benchmark
+     *  is skipped when the default charset cannot encode ALPHA, since
+     *  Main reads its files in that charset. */
+    private void machineBenchmarks(Alphabet alpha, int rotors, int pawls,
+                                   String params) {
+        String config = configuration(alpha, rotors, pawls, SEED);
+        String setting = setting(alpha, rotors, pawls, SEED);
+        Configuration conf = parse(config, alpha, rotors, pawls);
+        Machine M = conf.newMachine();
+        Session.setUp(M, setting);
+
+        String[] messages = new String[BATCH / SHORT];
+        for (int i = 0; i < messages.length; i += 1) {
+            messages[i] = corpus(alpha, SHORT, SEED + i);
+        }
+        String rotorSetting = setting.split(" ")[rotors + 1];
+        measure("convertShort", params, BATCH, () -> {
+            long sum = 0;
+            for (String msg : messages) {
+                M.setRotors(rotorSetting);
+                sum += M.convert(msg).charAt(0);
+            }
+            return sum;
+        });
+
+        CharBuffer text = CharBuffer.wrap(corpus(alpha, LONG, SEED));
+        CharBuffer converted = CharBuffer.allocate(LONG);
+        measure("convertLong", params, LONG, () -> {
+            text.rewind();
+            converted.clear();
+            M.convert(text, converted);
+            return converted.get(0);
+        });
+
+        if (!Charset.defaultCharset().newEncoder().canEncode(config)) {
+            System.out.printf("%-16s %-30s %14s %12s%n",
+                              "main", params, "n/a", "n/a");
+            return;
+        }
+        File dir = tempDirectory();
+        try {
+            String confName = write(dir, "bench.conf", config);
+            String inName = write(dir, "bench.in",
+                                  input(alpha, setting, LONG, SEED));
+            String outName = new File(dir, "bench.out").getPath();
+            measure("main", params, LONG, () -> {
+                Main.main(confName, inName, outName);
+                return new File(outName).length();
+            });
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /** Run BODY, which performs OPS operations per call, repeatedly for a
+     *  warm-up period and then for my number of timed iterations, and
+     *  print the result under NAME and PARAMS, unless NAME is not
+     *  selected. */
+    private void measure(String name, String params, long ops,
+                         Operation body) {
+        if (!selected(name)) {
+            return;
+        }
+        long nanos = _millis * 1_000_000L;
+        long sink = 0;
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            sink += body.run();
+        }
+        double[] rates = new double[_iterations];
+        long calls = 0, allocated = 0;
+        for (int i = 0; i < _iterations; i += 1) {
+            long count = 0;
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            long now = start;
+            while (now - start < nanos) {
+                sink += body.run();
+                count += 1;
+                now = System.nanoTime();
+            }
+            allocated += allocatedBytes() - bytes;
+            calls += count;
+            rates[i] = 1e9 * count * ops / (now - start);
+        }
+        Arrays.sort(rates);
+        String perOp = allocatedBytes() < 0 ? "n/a"
+            : String.format("%.3f", (double) allocated / (calls * ops));
+        System.out.printf("%-16s %-30s %14.4g %12s%n",
+                          name, params, rates[rates.length / 2], perOp);
+        _sink ^= sink;
+    }
+
+    /** Return true iff the benchmark named NAME is to be run. */
+    private boolean selected(String name) {
+        if (_names.isEmpty()) {
+            return true;
+        }
+        for (String pattern : _names) {
+            if (name.contains(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the number of bytes allocated so far by the current thread,
+     *  or -1 if that is not available. */
+    private static long allocatedBytes() {
+        if (!THREADS.isThreadAllocatedMemorySupported()
+                || !THREADS.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return THREADS.getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+    }
+
+    /** Return an alphabet of the first SIZE letters and digits, starting
+     *  with the upper-case Latin letters. */
+    static Alphabet alphabet(int size) {
+        StringBuilder chars = new StringBuilder();
+        for (char c = 'A'; c <= 'Z' && chars.length() < size; c += 1) {
+            chars.append(c);
+        }
+        for (char c = '0'; chars.length() < size; c += 1) {
+            if (c == Character.MAX_VALUE) {
+                throw error("no alphabet of %d characters", size);
+            }
+            if (Character.isLetterOrDigit(c) && (c < 'A' || c > 'Z')) {
+                chars.append(c);
+            }
+        }
+        return new Alphabet(chars.toString());
+    }
+
+    /** Return LENGTH characters of ALPHA chosen at random from a
+     *  generator seeded with SEED. */
+    static String corpus(Alphabet alpha, int length, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        char[] result = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = alpha.toChar(random.nextInt(alpha.size()));
+        }
+        return new String(result);
+    }
+
+    /** Return the contents of an input file for Main that sets SETTING
+     *  and then holds LENGTH characters of corpus(ALPHA, LENGTH, SEED) in
+     *  lines of at most LINE characters. */
+    static String input(Alphabet alpha, String setting, int length,
+                        long seed) {
+        String text = corpus(alpha, length, seed);
+        StringBuilder result = new StringBuilder(setting).append('\n');
+        for (int i = 0; i < length; i += LINE) {
+            result.append(text, i, Math.min(length, i + LINE)).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return the contents of a configuration file for alphabet ALPHA
+     *  with ROTORS slots and PAWLS pawls, generated from SEED.  It has a
+     *  reflector named R, fixed rotors N1, N2, ..., and moving rotors
+     *  M1, M2, ..., exactly as many of each as setting() uses. */
+    static String configuration(Alphabet alpha, int rotors, int pawls,
+                                long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < alpha.size(); i += 1) {
+            result.append(alpha.toChar(i));
+        }
+        result.append(String.format("%n%d %d%n", rotors, pawls));
+        result.append("R R ").append(reflector(alpha, random)).append('\n');
+        for (int i = 1; i < rotors - pawls; i += 1) {
+            result.append("N").append(i).append(" N ")
+                .append(cycles(alpha, random)).append('\n');
+        }
+        for (int i = 1; i <= pawls; i += 1) {
+            result.append("M").append(i).append(" M")
+                .append(alpha.toChar(random.nextInt(alpha.size())))
+                .append(' ').append(cycles(alpha, random)).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return a setting line for configuration(ALPHA, ROTORS, PAWLS,
+     *  SEED), with no plugboard. */
+    static String setting(Alphabet alpha, int rotors, int pawls,
+                          long seed) {
+        SplittableRandom random = new SplittableRandom(~seed);
+        StringBuilder result = new StringBuilder("* R");
+        for (int i = 1; i < rotors - pawls; i += 1) {
+            result.append(" N").append(i);
+        }
+        for (int i = 1; i <= pawls; i += 1) {
+            result.append(" M").append(i);
+        }
+        result.append(' ');
+        for (int i = 1; i < rotors; i += 1) {
+            result.append(alpha.toChar(random.nextInt(alpha.size())));
+        }
+        return result.toString();
+    }
+
+    /** Return the Configuration described by CONFIG, which was produced
+     *  by configuration(ALPHA, ROTORS, PAWLS, ...). */
+    private static Configuration parse(String config, Alphabet alpha,
+                                       int rotors, int pawls) {
+        List<Rotor> all = new ArrayList<>();
+        String[] lines = config.split("\n");
+        for (int i = 2; i < lines.length; i += 1) {
+            String[] fields = lines[i].split(" ", 3);
+            Permutation perm = new Permutation(fields[2], alpha);
+            switch (fields[1].charAt(0)) {
+            case 'R':
+                all.add(new Reflector(fields[0], perm));
+                break;
+            case 'N':
+                all.add(new FixedRotor(fields[0], perm));
+                break;
+            default:
+                all.add(new MovingRotor(fields[0], perm,
+                                        fields[1].substring(1)));
+                break;
+            }
+        }
+        return new Configuration(alpha, rotors, pawls, all);
+    }
+
+    /** Return the cycles of a random permutation of ALPHA drawn from
+     *  RANDOM. */
+    private static String cycles(Alphabet alpha, SplittableRandom random) {
+        int[] order = shuffled(alpha.size(), random);
+        StringBuilder result = new StringBuilder();
+        int i = 0;
+        while (i < order.length) {
+            int len = 1 + random.nextInt(order.length - i);
+            result.append('(');
+            for (int end = i + len; i < end; i += 1) {
+                result.append(alpha.toChar(order[i]));
+            }
+            result.append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return the cycles of a random fixed-point-free involution of
+     *  ALPHA, which must have even size, drawn from RANDOM. */
+    private static String reflector(Alphabet alpha,
+                                    SplittableRandom random) {
+        if (alpha.size() % 2 != 0) {
+            throw error("reflectors need an even alphabet size");
+        }
+        int[] order = shuffled(alpha.size(), random);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < order.length; i += 2) {
+            result.append('(').append(alpha.toChar(order[i]))
+                .append(alpha.toChar(order[i + 1])).append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return a random ordering of 0 .. N-1 drawn from RANDOM. */
+    private static int[] shuffled(int n, SplittableRandom random) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int j = random.nextInt(i + 1);
+            result[i] = result[j];
+            result[j] = i;
+        }
+        return result;
+    }
+
+    /** Return a new, empty temporary directory. */
+    private static File tempDirectory() {
+        try {
+            return Files.createTempDirectory("enigma").toFile();
+        } catch (IOException excp) {
+            throw error("could not create a temporary directory");
+        }
+    }
+
+    /** Write CONTENTS to the file named NAME in DIR, returning its
+     *  path. */
+    private static String write(File dir, String name, String contents) {
+        File file = new File(dir, name);
+        try (Writer out = new FileWriter(file)) {
+            out.write(contents);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+        return file.getPath();
+    }
+
+    /** A timed unit of work. */
+    interface Operation {
+        /** Perform the work once, returning a value depending on all of
+         *  it so that it cannot be optimized away. */
+        long run();
+    }
+
+    /** Seed of all generated configurations and corpora. */
+    static final long SEED = 0x5EEDE41AL;
+
+    /** Number of operations per call of the component benchmarks. */
+    static final int BATCH = 1 << 12;
+
+    /** Length of the messages in the convertShort benchmark. */
+    static final int SHORT = 64;
+
+    /** Length of the corpora in the convertLong and main benchmarks. */
+    static final int LONG = 1 << 20;
+
+    /** Length of the message lines in generated input files. */
+    static final int LINE = 80;
+
+    /** Source of per-thread allocation counts. */
+    private static final ThreadMXBean THREADS =
+        (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /** Names selecting the benchmarks to run; empty to run all. */
+    private final List<String> _names = new ArrayList<>();
+
+    /** Alphabet sizes to benchmark. */
+    private int[] _sizes = { 26, 62, 256 };
+
+    /** Numbers of rotor slots to benchmark. */
+    private int[] _rotors = { 5 };
+
+    /** Numbers of pawls to benchmark. */
+    private int[] _pawls = { 3 };
+
+    /** Number of timed iterations. */
+    private int _iterations = 5;
+
+    /** Length of each iteration and of the warm-up, in milliseconds. */
+    private int _millis = 500;
+
+    /** Combined results of all benchmarks, so none are dead code. */
+    private long _sink;
+}
@@ -0,0 +1,427 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.error;
+
+/** A known-plaintext key search in the manner of the Turing-Welchman
+ *  Bombe.  Given a ciphertext and a crib, a stretch of its plaintext,
+ *  it tries every order of rotors from a Configuration that fits its
+ *  slots, every initial setting of those rotors, and every alignment of
+ *  the crib with the ciphertext at which no character would encrypt to
+ *  itself.  Each candidate is tested against the menu of the alignment:
+ *  the graph on characters with an edge between each crib character and
+ *  the ciphertext character under it.  Since the plugboard P is an
+ *  involution applied on the way in and out, an edge from a to b at
+ *  message position k demands P(b) = S(P(a)), where S is the rotors'
+ *  permutation at k.  Guessing P of one character in each connected part
+ *  of the menu therefore determines P on the whole part, and loops in
+ *  the menu make most guesses contradict themselves.  A candidate for
+ *  which some guess survives is a stop, reported with the plugboard
+ *  pairs it implies.
+ *  @author Yulan Rong
+ */
+class Bombe {
+
+    /** A search in CONFIG for the keys under which the message CIPHERTEXT
+     *  could contain the plaintext CRIB.  Both are strings of characters
+     *  in CONFIG's alphabet. */
+    Bombe(Configuration config, String ciphertext, String crib) {
+        _config = config;
+        _alphabet = config.alphabet();
+        _size = _alphabet.size();
+        _cipher = indices(ciphertext);
+        _crib = indices(crib);
+        if (_crib.length == 0 || _crib.length > _cipher.length) {
+            throw error("crib must be non-empty and no longer than the "
+                        + "ciphertext");
+        }
+        _orders = config.orders();
+        if (_orders.isEmpty()) {
+            throw error("no order of the available rotors fits the slots");
+        }
+        _starts = config.numSettings(Long.MAX_VALUE / BLOCK);
+        if (_starts < 0) {
+            throw error("too many rotor settings to search");
+        }
+        _offset = -1;
+    }
+
+    /** Return the character indices of the characters in TEXT. */
+    private int[] indices(String text) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            if (!_alphabet.contains(text.charAt(i))) {
+                throw error("character not in the alphabet: %c",
+                            text.charAt(i));
+            }
+            result[i] = _alphabet.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
+    /** Limit the search to the crib starting at character #OFFSET of the
+     *  ciphertext, or lift the limit if OFFSET is negative. */
+    void setOffset(int offset) {
+        if (offset + _crib.length > _cipher.length) {
+            throw error("crib runs past the end of the ciphertext");
+        }
+        _offset = offset;
+    }
+
+    /** Return the offsets in the ciphertext at which the crib may lie
+     *  (within the limit set by setOffset): those at which no character
+     *  of the crib is equal to the ciphertext character under it, since
+     *  an Enigma never encrypts a character as itself. */
+    List<Integer> alignments() {
+        List<Integer> result = new ArrayList<>();
+        int from = _offset < 0 ? 0 : _offset;
+        int to = _offset < 0 ? _cipher.length - _crib.length : _offset;
+        for (int offset = from; offset <= to; offset += 1) {
+            boolean possible = true;
+            for (int i = 0; i < _crib.length && possible; i += 1) {
+                possible = _crib[i] != _cipher[offset + i];
+            }
+            if (possible) {
+                result.add(offset);
+            }
+        }
+        return result;
+    }
+
+    /** Return the number of rotor orders searched. */
+    int numOrders() {
+        return _orders.size();
+    }
+
+    /** Return all stops, ordered by alignment, rotor order (as
+     *  generated from the configuration) and initial setting, splitting
+     *  the search among the threads of POOL. */
+    List<Stop> search(ForkJoinPool pool) {
+        List<Integer> alignments = alignments();
+        Menu[] menus = new Menu[alignments.size()];
+        for (int a = 0; a < menus.length; a += 1) {
+            menus[a] = new Menu(alignments.get(a));
+        }
+        long blocks = (_starts + BLOCK - 1) / BLOCK;
+        return pool.invoke(new SearchTask(menus, blocks, 0,
+                                          blocks * _orders.size()
+                                          * menus.length));
+    }
+
+    /** One candidate key surviving the menu test. */
+    static class Stop {
+
+        /** A stop for the crib at OFFSET with rotors ROTORS at initial
+         *  SETTING and the plugboard cycles PLUGBOARD. */
+        Stop(int offset, String[] rotors, String setting, String plugboard) {
+            _offset = offset;
+            _rotors = rotors;
+            _setting = setting;
+            _plugboard = plugboard;
+        }
+
+        /** Return the offset of the crib in the ciphertext. */
+        int offset() {
+            return _offset;
+        }
+
+        /** Return the names of the rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return the initial setting of the rotors. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard pairs implied by the menu, as cycles. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return a setting line for this key, which deciphers the crib
+         *  at my offset when used at the start of the message. */
+        @Override
+        public String toString() {
+            String line = "* " + String.join(" ", _rotors) + " " + _setting;
+            return _plugboard.isEmpty() ? line : line + " " + _plugboard;
+        }
+
+        /** Offset of the crib. */
+        private final int _offset;
+
+        /** Rotor names. */
+        private final String[] _rotors;
+
+        /** Initial setting. */
+        private final String _setting;
+
+        /** Plugboard cycles. */
+        private final String _plugboard;
+    }
+
+    /** The menu of the crib at one offset in the ciphertext. */
+    private class Menu {
+
+        /** The menu for the crib at OFFSET. */
+        Menu(int offset) {
+            _menuOffset = offset;
+            int[] degree = new int[_size];
+            for (int i = 0; i < _crib.length; i += 1) {
+                degree[_crib[i]] += 1;
+                degree[_cipher[offset + i]] += 1;
+            }
+            _neighbors = new int[_size][];
+            _positions = new int[_size][];
+            for (int c = 0; c < _size; c += 1) {
+                _neighbors[c] = new int[degree[c]];
+                _positions[c] = new int[degree[c]];
+            }
+            int[] fill = new int[_size];
+            for (int i = 0; i < _crib.length; i += 1) {
+                link(_crib[i], _cipher[offset + i], i, fill);
+                link(_cipher[offset + i], _crib[i], i, fill);
+            }
+            int[] component = new int[_size];
+            Arrays.fill(component, -1);
+            List<Integer> tests = new ArrayList<>();
+            for (int c = 0; c < _size; c += 1) {
+                if (degree[c] > 0 && component[c] < 0) {
+                    tests.add(explore(c, tests.size(), component, degree));
+                }
+            }
+            _tests = tests.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        /** Add an edge from A to B at crib position K, where FILL counts
+         *  the edges of each character added so far. */
+        private void link(int a, int b, int k, int[] fill) {
+            _neighbors[a][fill[a]] = b;
+            _positions[a][fill[a]] = k;
+            fill[a] += 1;
+        }
+
+        /** Mark the characters connected to START with number N in
+         *  COMPONENT and return the one of highest DEGREE among them. */
+        private int explore(int start, int n, int[] component,
+                            int[] degree) {
+            int[] stack = new int[_size];
+            int top = 0, best = start;
+            stack[top++] = start;
+            component[start] = n;
+            while (top > 0) {
+                int c = stack[--top];
+                if (degree[c] > degree[best]) {
+                    best = c;
+                }
+                for (int d : _neighbors[c]) {
+                    if (component[d] < 0) {
+                        component[d] = n;
+                        stack[top++] = d;
+                    }
+                }
+            }
+            return best;
+        }
+
+        /** Offset of the crib. */
+        private final int _menuOffset;
+
+        /** _neighbors[c] lists the characters joined to c. */
+        private final int[][] _neighbors;
+
+        /** _positions[c][j] is the crib position of the edge from c to
+         *  _neighbors[c][j]. */
+        private final int[][] _positions;
+
+        /** The character whose plugboard partner is guessed, one in each
+         *  connected part of the menu. */
+        private final int[] _tests;
+    }
+
+    /** Tests the candidates of a range of blocks.  Block number b covers
+     *  up to BLOCK consecutive initial settings of one rotor order at one
+     *  alignment. */
+    private class SearchTask extends RecursiveTask<List<Stop>> {
+
+        /** A task testing blocks FROM to TO (exclusive) against MENUS, of
+         *  which there are BLOCKS for each order and alignment. */
+        SearchTask(Menu[] menus, long blocks, long from, long to) {
+            _menus = menus;
+            _blocks = blocks;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected List<Stop> compute() {
+            if (_to - _from > 1) {
+                long mid = (_from + _to) >>> 1;
+                SearchTask left = new SearchTask(_menus, _blocks, _from, mid);
+                left.fork();
+                List<Stop> right =
+                    new SearchTask(_menus, _blocks, mid, _to).compute();
+                List<Stop> result = left.join();
+                result.addAll(right);
+                return result;
+            }
+            List<Stop> result = new ArrayList<>();
+            if (_from == _to) {
+                return result;
+            }
+            long perMenu = _blocks * _orders.size();
+            Menu menu = _menus[(int) (_from / perMenu)];
+            String[] order = _orders.get((int) (_from % perMenu / _blocks));
+            long first = _from % _blocks * BLOCK;
+            long last = Math.min(first + BLOCK, _starts);
+
+            Machine M = _config.newMachine();
+            M.insertRotors(order);
+            int[][] tables = new int[_crib.length][_size];
+            int[][] partners = new int[menu._tests.length + 1][_size];
+            int[] queue = new int[_size];
+            for (long start = first; start < last; start += 1) {
+                String setting = _config.setting(start);
+                M.setRotors(setting);
+                M.scramblers(menu._menuOffset, tables);
+                Arrays.fill(partners[0], -1);
+                if (solve(menu, tables, 0, partners, queue)) {
+                    String plugboard = cycles(partners[menu._tests.length]);
+                    result.add(new Stop(menu._menuOffset, order, setting,
+                                        plugboard));
+                }
+            }
+            return result;
+        }
+
+        /** Menus of the alignments searched. */
+        private final Menu[] _menus;
+
+        /** Number of blocks for each order and alignment. */
+        private final long _blocks;
+
+        /** First block to test. */
+        private final long _from;
+
+        /** Block after the last to test. */
+        private final long _to;
+    }
+
+    /** Return true iff guesses for the plugboard partners of the test
+     *  characters of MENU, from the Nth on, can be extended without
+     *  contradiction, given the rotor permutation TABLES[k] at each crib
+     *  position k and the partners PARTNERS[N] (-1 where unknown) forced
+     *  by earlier guesses.  If so, PARTNERS[number of test characters]
+     *  holds the resulting partners.  QUEUE is working storage. */
+    private boolean solve(Menu menu, int[][] tables, int n,
+                          int[][] partners, int[] queue) {
+        if (n == menu._tests.length) {
+            return true;
+        }
+        int t = menu._tests[n];
+        for (int guess = 0; guess < _size; guess += 1) {
+            System.arraycopy(partners[n], 0, partners[n + 1], 0, _size);
+            if (propagate(menu, tables, t, guess, partners[n + 1], queue)
+                && solve(menu, tables, n + 1, partners, queue)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Pair A with B in PARTNERS and pair every character of MENU
+     *  connected to A or B as that requires, given the rotor permutation
+     *  TABLES[k] at each crib position k.  Return false if some character
+     *  would need two partners.  QUEUE is working storage. */
+    private boolean propagate(Menu menu, int[][] tables, int a, int b,
+                              int[] partners, int[] queue) {
+        int head = 0, tail = 0;
+        if (!pair(a, b, partners)) {
+            return false;
+        }
+        queue[tail++] = a;
+        if (b != a) {
+            queue[tail++] = b;
+        }
+        while (head < tail) {
+            int c = queue[head++];
+            int[] neighbors = menu._neighbors[c];
+            int[] positions = menu._positions[c];
+            for (int j = 0; j < neighbors.length; j += 1) {
+                int d = neighbors[j];
+                int forced = tables[positions[j]][partners[c]];
+                if (partners[d] < 0) {
+                    if (!pair(d, forced, partners)) {
+                        return false;
+                    }
+                    queue[tail++] = d;
+                    if (forced != d) {
+                        queue[tail++] = forced;
+                    }
+                } else if (partners[d] != forced) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Record A and B as plugboard partners in PARTNERS, returning false
+     *  if either already has a different partner. */
+    private static boolean pair(int a, int b, int[] partners) {
+        if (partners[a] >= 0 || partners[b] >= 0) {
+            return partners[a] == b && partners[b] == a;
+        }
+        partners[a] = b;
+        partners[b] = a;
+        return true;
+    }
+
+    /** Return the swapped pairs in PARTNERS as plugboard cycles. */
+    private String cycles(int[] partners) {
+        StringBuilder result = new StringBuilder();
+        for (int c = 0; c < _size; c += 1) {
+            if (partners[c] > c) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(').append(_alphabet.toChar(c))
+                    .append(_alphabet.toChar(partners[c])).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Number of initial settings in a unit of work. */
+    static final int BLOCK = 1 << 12;
+
+    /** Configuration searched. */
+    private final Configuration _config;
+
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** The ciphertext, as character indices. */
+    private final int[] _cipher;
+
+    /** The crib, as character indices. */
+    private final int[] _crib;
+
+    /** Rotor orders searched. */
+    private final List<String[]> _orders;
+
+    /** Number of initial settings of each order. */
+    private final long _starts;
+
+    /** Offset the search is limited to, or -1. */
+    private int _offset;
+}
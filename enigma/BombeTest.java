@@ -0,0 +1,123 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Yulan Rong
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a 3-slot, 2-pawl configuration with reflector B and naval
+     *  rotors I to IV, small enough to search quickly. */
+    static Configuration smallConfiguration() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] moving = {"I", "II", "III", "IV"};
+        String[] notches = {"Q", "E", "V", "J"};
+        for (int i = 0; i < moving.length; i += 1) {
+            rotors.add(new MovingRotor(moving[i],
+                    new Permutation(NAVALA.get(moving[i]), UPPER),
+                    notches[i]));
+        }
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        return new Configuration(UPPER, 3, 2, rotors);
+    }
+
+    /** Return the conversion of MSG by a machine of CONFIG set up with
+     *  the setting line SETTING. */
+    static String encipher(Configuration config, String setting, String msg) {
+        Machine m = config.newMachine();
+        Session.setUp(m, setting);
+        return m.convert(msg);
+    }
+
+    /** Key used to encipher the test message. */
+    static final String KEY = "* B IV I QM (AF) (CD) (TZ)";
+
+    /** Plaintext of the test message. */
+    static final String PLAIN = "WETTERVORHERSAGEBISKAYAHEUTEREGENUNDWIND";
+
+    /** A crib from PLAIN. */
+    static final String CRIB = "VORHERSAGEBISKAYA";
+
+    /** Offset of CRIB in PLAIN. */
+    static final int OFFSET = PLAIN.indexOf(CRIB);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkOrders() {
+        Bombe bombe = new Bombe(smallConfiguration(), "ABCD", "B");
+        assertEquals(12, bombe.numOrders());
+    }
+
+    @Test
+    public void checkAlignments() {
+        Configuration config = smallConfiguration();
+        String cipher = encipher(config, KEY, PLAIN);
+        List<Integer> alignments = new Bombe(config, cipher, CRIB)
+            .alignments();
+        assertTrue(alignments.contains(OFFSET));
+        for (int offset = 0; offset + CRIB.length() <= cipher.length();
+             offset += 1) {
+            boolean clash = false;
+            for (int i = 0; i < CRIB.length(); i += 1) {
+                clash |= CRIB.charAt(i) == cipher.charAt(offset + i);
+            }
+            assertEquals("offset " + offset, !clash,
+                         alignments.contains(offset));
+        }
+    }
+
+    @Test
+    public void checkFindsKey() {
+        Configuration config = smallConfiguration();
+        String cipher = encipher(config, KEY, PLAIN);
+        Bombe bombe = new Bombe(config, cipher, CRIB);
+        bombe.setOffset(OFFSET);
+        List<Bombe.Stop> stops = bombe.search(new ForkJoinPool(2));
+        boolean found = false;
+        for (Bombe.Stop stop : stops) {
+            assertEquals(OFFSET, stop.offset());
+            if (stop.toString().startsWith("* B IV I QM ")) {
+                found = true;
+                for (String pair : stop.plugboard().split(" ")) {
+                    assertTrue(pair, KEY.contains(pair));
+                }
+            }
+        }
+        assertTrue("key not among " + stops, found);
+    }
+
+    @Test
+    public void checkStopsDecipherCrib() {
+        Configuration config = smallConfiguration();
+        String cipher = encipher(config, KEY, PLAIN);
+        Bombe bombe = new Bombe(config, cipher, CRIB);
+        bombe.setOffset(OFFSET);
+        for (Bombe.Stop stop : bombe.search(ForkJoinPool.commonPool())) {
+            String plain = encipher(config, stop.toString(), cipher);
+            assertEquals(stop.toString(), CRIB,
+                         plain.substring(OFFSET, OFFSET + CRIB.length()));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkCribTooLong() {
+        new Bombe(smallConfiguration(), "ABC", "ABCD");
+    }
+}
@@ -0,0 +1,588 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.error;
+
+/** A catalog of the characteristics of every rotor order and initial
+ *  setting of a configuration, after Rejewski.  A message key enciphered
+ *  twice at the start of each message under the day's setting gives six
+ *  rotor permutations A to F (the plugboard aside); the products AD, BE
+ *  and CF (A followed by D, and so on) can be recovered from enough of
+ *  the day's indicators, and their cycle types, the characteristic,
+ *  depend only on the rotors, since the plugboard merely conjugates
+ *  them.  A catalog lists, for each characteristic, the rotor orders
+ *  and settings that produce it.
+ *
+ *  A catalog is a directory holding one file for each rotor order,
+ *  named for the order's number (see part), so that each file stays
+ *  small enough to map whole and is built in memory one at a time.
+ *  Each file holds, all big-endian: the int MAGIC; the alphabet size and
+ *  characters; the number of slots; the number of rotor orders, the
+ *  number of this file's order, and the names in that order (a length
+ *  and chars); the number of settings of each order (a long); the number
+ *  of characteristics; a directory of one DIRECTORY_ENTRY-byte record
+ *  per characteristic, sorted by hash, each holding the characteristic's
+ *  hash, the offset of its cycle types and of its entries, and the
+ *  number of entries (long, long, long, int); the cycle types of the
+ *  characteristics, each as a count and the lengths (ints); and the
+ *  entries, each a long setting number (as for Configuration.setting).
+ *  Lookups map the files and binary-search each directory.
+ *  @author Yulan Rong
+ */
+class Catalog {
+
+    /** Write the catalog of CONFIG to the directory named DIR, creating
+     *  it if need be, computing it on POOL. */
+    static void build(Configuration config, String dir, ForkJoinPool pool) {
+        List<String[]> orders = config.orders();
+        if (orders.isEmpty()) {
+            throw error("no order of the available rotors fits the slots");
+        }
+        long settings = config.numSettings(MAX_SETTINGS);
+        if (settings < 0) {
+            throw error("a rotor order of this configuration has more "
+                        + "than %d settings", MAX_SETTINGS);
+        }
+        File directory = new File(dir);
+        directory.mkdirs();
+        if (!directory.isDirectory()) {
+            throw error("could not create %s", dir);
+        }
+        long blocks = (settings + BLOCK - 1) / BLOCK;
+        for (int k = 0; k < orders.size(); k += 1) {
+            Map<Key, Postings> found = pool.invoke(
+                    new BuildTask(config, orders.get(k), settings, 0,
+                                  blocks));
+            write(config, orders.size(), k, settings, found,
+                  part(dir, k).toString());
+        }
+    }
+
+    /** Write to the file named FILE the part of the catalog of CONFIG,
+     *  which has ORDERS rotor orders of SETTINGS settings each, for
+     *  order #K, whose characteristics and entries are FOUND. */
+    private static void write(Configuration config, int orders, int k,
+                              long settings, Map<Key, Postings> found,
+                              String file) {
+        Key[] keys = found.keySet().toArray(new Key[0]);
+        Arrays.sort(keys);
+        Alphabet alphabet = config.alphabet();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(alphabet.size());
+            for (int i = 0; i < alphabet.size(); i += 1) {
+                out.writeChar(alphabet.toChar(i));
+            }
+            out.writeInt(config.numRotors());
+            out.writeInt(orders);
+            out.writeInt(k);
+            for (String name : config.orders().get(k)) {
+                out.writeInt(name.length());
+                out.writeChars(name);
+            }
+            out.writeLong(settings);
+            out.writeInt(keys.length);
+            long types = out.size() + (long) keys.length * DIRECTORY_ENTRY;
+            long typesSize = 0;
+            for (Key key : keys) {
+                typesSize += key.bytes();
+            }
+            long entries = types + typesSize;
+            for (Key key : keys) {
+                out.writeLong(key.hashCode64());
+                out.writeLong(types);
+                out.writeLong(entries);
+                out.writeInt(found.get(key)._count);
+                types += key.bytes();
+                entries += (long) found.get(key)._count * Long.BYTES;
+            }
+            for (Key key : keys) {
+                for (CycleType type : key._types) {
+                    out.writeInt(type.numCycles());
+                    for (int length : type.lengths()) {
+                        out.writeInt(length);
+                    }
+                }
+            }
+            for (Key key : keys) {
+                Postings postings = found.get(key);
+                Arrays.sort(postings._entries, 0, postings._count);
+                for (int i = 0; i < postings._count; i += 1) {
+                    out.writeLong(postings._entries[i]);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return the file of the catalog in directory DIR for rotor order
+     *  #K. */
+    static Path part(String dir, int k) {
+        return Paths.get(dir, k + SUFFIX);
+    }
+
+    /** The catalog in the directory named DIR, which must have been built
+     *  for a configuration with ALPHABET. */
+    Catalog(Alphabet alphabet, String dir) {
+        _alphabet = alphabet;
+        Part first = new Part(alphabet, part(dir, 0));
+        _parts = new Part[first._orders];
+        _parts[0] = first;
+        _settings = first._settings;
+        for (int k = 1; k < _parts.length; k += 1) {
+            _parts[k] = new Part(alphabet, part(dir, k));
+            if (_parts[k]._orders != _parts.length
+                    || _parts[k]._settings != _settings) {
+                throw error("%s does not belong with %s", part(dir, k),
+                            part(dir, 0));
+            }
+        }
+        for (int k = 0; k < _parts.length; k += 1) {
+            if (_parts[k]._number != k) {
+                throw error("%s is not the part for order %d",
+                            part(dir, k), k);
+            }
+        }
+    }
+
+    /** Return the entries with the characteristic given by the cycle
+     *  types of AD, BE and CF in CHARACTERISTIC, as setting lines
+     *  without plugboards, in increasing order of rotor order and
+     *  setting. */
+    List<String> lookup(CycleType[] characteristic) {
+        Key key = new Key(characteristic);
+        List<String> result = new ArrayList<>();
+        for (Part part : _parts) {
+            part.lookup(key, result);
+        }
+        return result;
+    }
+
+    /** Return the number of distinct characteristics in the catalog,
+     *  counting characteristics whose hashes are equal only once. */
+    int numCharacteristics() {
+        HashSet<Long> hashes = new HashSet<>();
+        for (Part part : _parts) {
+            for (int k = 0; k < part._numKeys; k += 1) {
+                hashes.add(part._map.getLong(part.record(k)));
+            }
+        }
+        return hashes.size();
+    }
+
+    /** Return the setting line, without plugboard, of SETTING in rotor
+     *  order ORDER. */
+    private String setting(String[] order, long setting) {
+        StringBuilder result = new StringBuilder("*");
+        for (String name : order) {
+            result.append(' ').append(name);
+        }
+        int size = _alphabet.size();
+        char[] chars = new char[order.length - 1];
+        long n = setting;
+        for (int i = chars.length - 1; i >= 0; i -= 1) {
+            chars[i] = _alphabet.toChar((int) (n % size));
+            n /= size;
+        }
+        return result.append(' ').append(chars).toString();
+    }
+
+    /** The mapped file of the catalog for one rotor order. */
+    private class Part {
+
+        /** The part in FILE, which must have been built for a
+         *  configuration with ALPHABET. */
+        Part(Alphabet alphabet, Path file) {
+            try (FileChannel in = FileChannel.open(file,
+                                                   StandardOpenOption.READ)) {
+                if (in.size() > Integer.MAX_VALUE) {
+                    throw error("%s is too large to map", file);
+                }
+                _map = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            } catch (IOException excp) {
+                throw error("could not open %s", file);
+            }
+            try {
+                if (_map.getInt() != MAGIC
+                        || _map.getInt() != alphabet.size()) {
+                    throw error("%s is not a catalog for this alphabet",
+                                file);
+                }
+                for (int i = 0; i < alphabet.size(); i += 1) {
+                    if (_map.getChar() != alphabet.toChar(i)) {
+                        throw error("%s is not a catalog for this alphabet",
+                                    file);
+                    }
+                }
+                _order = new String[_map.getInt()];
+                _orders = _map.getInt();
+                _number = _map.getInt();
+                for (int k = 0; k < _order.length; k += 1) {
+                    char[] name = new char[_map.getInt()];
+                    for (int i = 0; i < name.length; i += 1) {
+                        name[i] = _map.getChar();
+                    }
+                    _order[k] = new String(name);
+                }
+                _settings = _map.getLong();
+                _numKeys = _map.getInt();
+                _directory = _map.position();
+            } catch (RuntimeException excp) {
+                if (excp instanceof EnigmaException) {
+                    throw excp;
+                }
+                throw error("%s is not a valid catalog", file);
+            }
+        }
+
+        /** Add to RESULT the setting lines of my entries with
+         *  characteristic KEY, in increasing order of setting. */
+        void lookup(Key key, List<String> result) {
+            long hash = key.hashCode64();
+            int lo = 0, hi = _numKeys;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (Long.compare(_map.getLong(record(mid)), hash) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (; lo < _numKeys && _map.getLong(record(lo)) == hash;
+                 lo += 1) {
+                int at = record(lo);
+                if (key.matches(_map,
+                                (int) _map.getLong(at + Long.BYTES))) {
+                    int entries = (int) _map.getLong(at + 2 * Long.BYTES);
+                    int count = _map.getInt(at + 3 * Long.BYTES);
+                    for (int i = 0; i < count; i += 1) {
+                        result.add(setting(_order,
+                                           _map.getLong(entries
+                                                        + i * Long.BYTES)));
+                    }
+                }
+            }
+        }
+
+        /** Return the offset in _map of directory record K. */
+        private int record(int k) {
+            return _directory + k * DIRECTORY_ENTRY;
+        }
+
+        /** The mapped file. */
+        private MappedByteBuffer _map;
+
+        /** Number of rotor orders in the whole catalog. */
+        private int _orders;
+
+        /** Number of my rotor order. */
+        private int _number;
+
+        /** My rotor order. */
+        private String[] _order;
+
+        /** Number of settings of my order. */
+        private long _settings;
+
+        /** Number of characteristics in this part. */
+        private int _numKeys;
+
+        /** Offset of the directory in _map. */
+        private int _directory;
+    }
+
+    /** Return the characteristic, the cycle types of AD, BE and CF, shown
+     *  by INDICATORS, the doubly enciphered message keys of one day, each
+     *  of six characters of ALPHABET.  There must be enough indicators
+     *  that their first characters (and likewise their second and third)
+     *  cover the whole alphabet. */
+    static CycleType[] characteristic(List<String> indicators,
+                                      Alphabet alphabet) {
+        int size = alphabet.size();
+        int[][] products = new int[KEY][size];
+        for (int[] product : products) {
+            Arrays.fill(product, -1);
+        }
+        for (String indicator : indicators) {
+            if (indicator.length() != 2 * KEY) {
+                throw error("indicator %s does not have %d characters",
+                            indicator, 2 * KEY);
+            }
+            for (int j = 0; j < KEY; j += 1) {
+                int from = alphabet.toInt(indicator.charAt(j)),
+                    to = alphabet.toInt(indicator.charAt(j + KEY));
+                if (products[j][from] >= 0 && products[j][from] != to) {
+                    throw error("indicators disagree at %s", indicator);
+                }
+                products[j][from] = to;
+            }
+        }
+        CycleType[] result = new CycleType[KEY];
+        for (int j = 0; j < KEY; j += 1) {
+            for (int c = 0; c < size; c += 1) {
+                if (products[j][c] < 0) {
+                    throw error("the indicators do not determine product %d "
+                                + "at %c", j + 1, alphabet.toChar(c));
+                }
+            }
+            result[j] = new Permutation(products[j], alphabet).cycleType();
+        }
+        return result;
+    }
+
+    /** Computes the characteristics of a range of blocks of the settings
+     *  of one rotor order.  Block b covers up to BLOCK consecutive
+     *  settings. */
+    private static class BuildTask
+        extends RecursiveTask<Map<Key, Postings>> {
+
+        /** A task for blocks FROM to TO (exclusive) of the SETTINGS
+         *  initial settings of rotor order ORDER of CONFIG. */
+        BuildTask(Configuration config, String[] order, long settings,
+                  long from, long to) {
+            _config = config;
+            _order = order;
+            _settings = settings;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected Map<Key, Postings> compute() {
+            if (_to - _from > 1) {
+                long mid = (_from + _to) >>> 1;
+                BuildTask left =
+                    new BuildTask(_config, _order, _settings, _from, mid);
+                left.fork();
+                Map<Key, Postings> right =
+                    new BuildTask(_config, _order, _settings, mid, _to)
+                    .compute();
+                return merge(left.join(), right);
+            }
+            Map<Key, Postings> result = new HashMap<>();
+            if (_from == _to) {
+                return result;
+            }
+            long first = _from * BLOCK;
+            long last = Math.min(first + BLOCK, _settings);
+            Alphabet alphabet = _config.alphabet();
+            Machine M = _config.newMachine();
+            M.insertRotors(_order);
+            int[][] tables = new int[2 * KEY][alphabet.size()];
+            for (long start = first; start < last; start += 1) {
+                M.setRotors(_config.setting(start));
+                M.scramblers(0, tables);
+                CycleType[] types = new CycleType[KEY];
+                for (int j = 0; j < KEY; j += 1) {
+                    Permutation early = new Permutation(tables[j], alphabet),
+                        late = new Permutation(tables[j + KEY], alphabet);
+                    types[j] = early.compose(late).cycleType();
+                }
+                result.computeIfAbsent(new Key(types), k -> new Postings())
+                    .add(start);
+            }
+            return result;
+        }
+
+        /** Return the union of A and B, reusing the larger. */
+        private static Map<Key, Postings> merge(Map<Key, Postings> a,
+                                                Map<Key, Postings> b) {
+            if (a.size() < b.size()) {
+                Map<Key, Postings> t = a;
+                a = b;
+                b = t;
+            }
+            for (Map.Entry<Key, Postings> entry : b.entrySet()) {
+                Postings postings = a.get(entry.getKey());
+                if (postings == null) {
+                    a.put(entry.getKey(), entry.getValue());
+                } else {
+                    postings.addAll(entry.getValue());
+                }
+            }
+            return a;
+        }
+
+        /** The configuration cataloged. */
+        private final Configuration _config;
+
+        /** The rotor order cataloged. */
+        private final String[] _order;
+
+        /** Number of initial settings of the order. */
+        private final long _settings;
+
+        /** First block computed. */
+        private final long _from;
+
+        /** Block after the last computed. */
+        private final long _to;
+    }
+
+    /** A characteristic: the cycle types of AD, BE and CF, as a key
+     *  ordered by a 64-bit hash that is the same in every run. */
+    private static class Key implements Comparable<Key> {
+
+        /** The characteristic with cycle types TYPES. */
+        Key(CycleType[] types) {
+            if (types.length != KEY) {
+                throw error("a characteristic has %d cycle types", KEY);
+            }
+            _types = types.clone();
+            long hash = FNV_OFFSET;
+            for (CycleType type : _types) {
+                for (int length : type.lengths()) {
+                    hash = (hash ^ length) * FNV_PRIME;
+                }
+                hash *= FNV_PRIME;
+            }
+            _hash = hash;
+        }
+
+        /** Return my 64-bit hash. */
+        long hashCode64() {
+            return _hash;
+        }
+
+        /** Return the number of bytes my cycle types take in a catalog
+         *  file. */
+        long bytes() {
+            long result = 0;
+            for (CycleType type : _types) {
+                result += (1L + type.numCycles()) * Integer.BYTES;
+            }
+            return result;
+        }
+
+        /** Return true iff the cycle types written at offset AT of MAP
+         *  are mine. */
+        boolean matches(MappedByteBuffer map, int at) {
+            for (CycleType type : _types) {
+                if (map.getInt(at) != type.numCycles()) {
+                    return false;
+                }
+                for (int length : type.lengths()) {
+                    at += Integer.BYTES;
+                    if (map.getInt(at) != length) {
+                        return false;
+                    }
+                }
+                at += Integer.BYTES;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key
+                && Arrays.equals(_types, ((Key) obj)._types);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(_hash);
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int result = Long.compare(_hash, other._hash);
+            for (int j = 0; result == 0 && j < KEY; j += 1) {
+                result = _types[j].compareTo(other._types[j]);
+            }
+            return result;
+        }
+
+        /** Cycle types of AD, BE and CF. */
+        private final CycleType[] _types;
+
+        /** Hash of _types. */
+        private final long _hash;
+    }
+
+    /** A growing list of catalog entries. */
+    private static class Postings {
+
+        /** Add ENTRY. */
+        void add(long entry) {
+            if (_count == _entries.length) {
+                _entries = Arrays.copyOf(_entries, 2 * _count);
+            }
+            _entries[_count] = entry;
+            _count += 1;
+        }
+
+        /** Add the entries of OTHER. */
+        void addAll(Postings other) {
+            if (_count + other._count > _entries.length) {
+                _entries = Arrays.copyOf(_entries,
+                                         Math.max(2 * _count,
+                                                  _count + other._count));
+            }
+            System.arraycopy(other._entries, 0, _entries, _count,
+                             other._count);
+            _count += other._count;
+        }
+
+        /** The entries, in _entries[0 .. _count - 1]. */
+        private long[] _entries = new long[2];
+
+        /** Number of entries. */
+        private int _count;
+    }
+
+    /** Length of a message key, enciphered twice in each indicator. */
+    static final int KEY = 3;
+
+    /** Largest number of settings of a rotor order in a catalog, which
+     *  keeps each file of the catalog under the 2GB that can be mapped
+     *  whole. */
+    static final long MAX_SETTINGS = 1L << 27;
+
+    /** Number of entries computed by each task. */
+    static final int BLOCK = 1 << 10;
+
+    /** First word of a catalog file. */
+    static final int MAGIC = 0x45524332;
+
+    /** Suffix of the name of each file of a catalog. */
+    static final String SUFFIX = ".cat";
+
+    /** Bytes in each directory record. */
+    private static final int DIRECTORY_ENTRY =
+        3 * Long.BYTES + Integer.BYTES;
+
+    /** FNV-1a offset basis. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    /** FNV-1a prime. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Alphabet of the catalog. */
+    private final Alphabet _alphabet;
+
+    /** The files of the catalog, by rotor order. */
+    private final Part[] _parts;
+
+    /** Number of settings of each order. */
+    private final long _settings;
+}
@@ -0,0 +1,132 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.BombeTest.smallConfiguration;
+import static enigma.BombeTest.encipher;
+import static enigma.TestUtils.UPPER;
+
+/** The suite of all JUnit tests for the Catalog class.
+ *  @author Yulan Rong
+ */
+public class CatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the indicators of one day under setting line KEY of
+     *  CONFIG: each letter repeated as a message key, enciphered twice. */
+    static List<String> indicators(Configuration config, String key) {
+        List<String> result = new ArrayList<>();
+        for (int c = 0; c < UPPER.size(); c += 1) {
+            char k = UPPER.toChar(c);
+            String message =
+                "" + k + UPPER.toChar((c + 1) % UPPER.size()) + k;
+            result.add(encipher(config, key, message + message));
+        }
+        return result;
+    }
+
+    /** Return the name of a temporary directory holding the catalog of
+     *  CONFIG, built with THREADS threads. */
+    static String build(Configuration config, int threads)
+        throws IOException {
+        File dir = Files.createTempDirectory("catalog").toFile();
+        dir.deleteOnExit();
+        Catalog.build(config, dir.getPath(), new ForkJoinPool(threads));
+        for (File file : dir.listFiles()) {
+            file.deleteOnExit();
+        }
+        return dir.getPath();
+    }
+
+    /** Return the catalog of CONFIG, written to a temporary directory. */
+    static Catalog catalog(Configuration config) throws IOException {
+        return new Catalog(config.alphabet(), build(config, 2));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkLookupFindsKey() throws IOException {
+        Configuration config = smallConfiguration();
+        Catalog catalog = catalog(config);
+        CycleType[] characteristic = Catalog.characteristic(
+                indicators(config, BombeTest.KEY), config.alphabet());
+        List<String> found = catalog.lookup(characteristic);
+        assertTrue(found.contains("* B IV I QM"));
+        for (String setting : found) {
+            assertArrayEquals(characteristic, Catalog.characteristic(
+                    indicators(config, setting), config.alphabet()));
+        }
+    }
+
+    @Test
+    public void checkEveryEntryOnce() throws IOException {
+        Configuration config = smallConfiguration();
+        Catalog catalog = catalog(config);
+        int total = 0;
+        for (String setting : List.of("* B I II AA", "* B III IV ZQ",
+                                      "* B II I EV")) {
+            CycleType[] characteristic = Catalog.characteristic(
+                    indicators(config, setting), config.alphabet());
+            List<String> found = catalog.lookup(characteristic);
+            assertTrue(found.contains(setting));
+            assertEquals(found.size(), found.stream().distinct().count());
+            total += found.size();
+        }
+        assertTrue(total <= config.orders().size()
+                   * config.numSettings(Long.MAX_VALUE));
+        assertTrue(catalog.numCharacteristics() > 1);
+    }
+
+    @Test
+    public void checkUnknownCharacteristic() throws IOException {
+        Catalog catalog = catalog(smallConfiguration());
+        CycleType[] none = {
+            CycleType.parse("26"), CycleType.parse("26"),
+            CycleType.parse("26"),
+        };
+        assertTrue(catalog.lookup(none).isEmpty());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkTooFewIndicators() {
+        Configuration config = smallConfiguration();
+        Catalog.characteristic(indicators(config, BombeTest.KEY)
+                               .subList(0, 20), config.alphabet());
+    }
+
+    @Test
+    public void checkFilePerOrder() throws IOException {
+        Configuration config = smallConfiguration();
+        String dir = build(config, 1);
+        int orders = config.orders().size();
+        assertEquals(orders, new File(dir).listFiles().length);
+        Catalog.part(dir, orders - 1).toFile().delete();
+        try {
+            new Catalog(config.alphabet(), dir);
+            fail("opened a catalog with a missing file");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkWrongAlphabet() throws IOException {
+        new Catalog(Alphabet.bytes(), build(smallConfiguration(), 1));
+    }
+}
@@ -0,0 +1,184 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import static enigma.EnigmaException.error;
+
+/** The progress of a conversion of one memory-mapped file into another,
+ *  from which the conversion can be resumed: how far it has read and
+ *  written, where it is in the output's current line, and the setting
+ *  line in force together with how many characters have been converted
+ *  since it.  A checkpoint is kept in a small file beside the output,
+ *  holding, all big-endian: the int MAGIC; the size of the input file;
+ *  the input and output offsets; the output offset at which the current
+ *  line began; the line number; the output column;
+ *  the position; and the setting line and the rotor settings at that
+ *  position, as UTF strings.
+ *  @author Yulan Rong
+ */
+class Checkpoint {
+
+    /** A checkpoint of a conversion of an input file of INPUTSIZE bytes
+     *  that has read INPUT bytes and written OUTPUT, and is on line LINE
+     *  of the input, whose output began at offset LINESTART, with COLUMN
+     *  characters of the current group written.
+     *  It last read the setting line SETTING, has converted POSITION
+     *  characters since, and its rotors are now at ROTORS. */
+    Checkpoint(long inputSize, long input, long output, long lineStart,
+               int line, int column, String setting, long position,
+               String rotors) {
+        _inputSize = inputSize;
+        _input = input;
+        _output = output;
+        _lineStart = lineStart;
+        _line = line;
+        _column = column;
+        _setting = setting;
+        _position = position;
+        _rotors = rotors;
+    }
+
+    /** Return the checkpoint file for the output file named OUTPUT. */
+    static Path file(String output) {
+        return Paths.get(output + SUFFIX);
+    }
+
+    /** Return the checkpoint in FILE. */
+    static Checkpoint read(Path file) {
+        try (DataInputStream in = new DataInputStream(
+                new FileInputStream(file.toFile()))) {
+            if (in.readInt() != MAGIC) {
+                throw error("%s is not a checkpoint", file);
+            }
+            return new Checkpoint(in.readLong(), in.readLong(),
+                                  in.readLong(), in.readLong(),
+                                  in.readInt(), in.readInt(),
+                                  in.readUTF(), in.readLong(),
+                                  in.readUTF());
+        } catch (EOFException excp) {
+            throw error("%s is truncated", file);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Replace FILE by this checkpoint, so that FILE always holds either
+     *  the previous checkpoint or this one in full. */
+    void write(Path file) {
+        Path temp = Paths.get(file + ".tmp");
+        try {
+            try (FileOutputStream stream = new FileOutputStream(temp.toFile());
+                 DataOutputStream out = new DataOutputStream(
+                         new BufferedOutputStream(stream))) {
+                out.writeInt(MAGIC);
+                out.writeLong(_inputSize);
+                out.writeLong(_input);
+                out.writeLong(_output);
+                out.writeLong(_lineStart);
+                out.writeInt(_line);
+                out.writeInt(_column);
+                out.writeUTF(_setting);
+                out.writeLong(_position);
+                out.writeUTF(_rotors);
+                out.flush();
+                stream.getFD().sync();
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException excp) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return the size of the input file. */
+    long inputSize() {
+        return _inputSize;
+    }
+
+    /** Return the number of input bytes read. */
+    long input() {
+        return _input;
+    }
+
+    /** Return the number of output bytes written. */
+    long output() {
+        return _output;
+    }
+
+    /** Return the output offset at which the current line began. */
+    long lineStart() {
+        return _lineStart;
+    }
+
+    /** Return the number of the current input line. */
+    int line() {
+        return _line;
+    }
+
+    /** Return the number of characters in the current output group. */
+    int column() {
+        return _column;
+    }
+
+    /** Return the setting line in force. */
+    String setting() {
+        return _setting;
+    }
+
+    /** Return the number of characters converted since setting(). */
+    long position() {
+        return _position;
+    }
+
+    /** Return the rotor settings at position(). */
+    String rotors() {
+        return _rotors;
+    }
+
+    /** Suffix of checkpoint file names. */
+    static final String SUFFIX = ".checkpoint";
+
+    /** First word of a checkpoint file. */
+    static final int MAGIC = 0x45434b32;
+
+    /** Size of the input file. */
+    private final long _inputSize;
+
+    /** Input bytes read. */
+    private final long _input;
+
+    /** Output bytes written. */
+    private final long _output;
+
+    /** Output offset of the start of the current line. */
+    private final long _lineStart;
+
+    /** Current input line. */
+    private final int _line;
+
+    /** Characters in the current output group. */
+    private final int _column;
+
+    /** Setting line in force. */
+    private final String _setting;
+
+    /** Characters converted since _setting. */
+    private final long _position;
+
+    /** Rotor settings at _position. */
+    private final String _rotors;
+}
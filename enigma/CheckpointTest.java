@@ -0,0 +1,63 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+
+/** The suite of all JUnit tests for the Checkpoint class.
+ *  @author Yulan Rong
+ */
+public class CheckpointTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void checkRoundTrip() throws IOException {
+        File output = File.createTempFile("enigma", ".out");
+        Path file = Checkpoint.file(output.getPath());
+        try {
+            String setting = "* B Beta III IV I AXLE (HQ) (EX)";
+            new Checkpoint(1L << 40, 1L << 35, 1L << 36, 1L << 30, 12, 3,
+                           setting, 123456789L, "AXLE").write(file);
+            new Checkpoint(1L << 40, (1L << 35) + 1, (1L << 36) + 2,
+                           (1L << 36) - 5, 12, 4,
+                           setting, 123456790L, "AXLF").write(file);
+            Checkpoint read = Checkpoint.read(file);
+            assertEquals(1L << 40, read.inputSize());
+            assertEquals((1L << 35) + 1, read.input());
+            assertEquals((1L << 36) + 2, read.output());
+            assertEquals((1L << 36) - 5, read.lineStart());
+            assertEquals(12, read.line());
+            assertEquals(4, read.column());
+            assertEquals(setting, read.setting());
+            assertEquals(123456790L, read.position());
+            assertEquals("AXLF", read.rotors());
+            assertFalse(new File(file + ".tmp").exists());
+        } finally {
+            output.delete();
+            file.toFile().delete();
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkNotACheckpoint() throws IOException {
+        File file = File.createTempFile("enigma", Checkpoint.SUFFIX);
+        try (Writer out = new FileWriter(file)) {
+            out.write("not a checkpoint");
+        }
+        try {
+            Checkpoint.read(file.toPath());
+        } finally {
+            file.delete();
+        }
+    }
+}
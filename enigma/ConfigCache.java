@@ -0,0 +1,191 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.error;
+
+/** Compiled configurations, kept beside their configuration files so
+ *  that later runs need not parse them.  The cache of file F is the file
+ *  F.cache, holding, all big-endian: the int MAGIC; the SHA-256 digest of
+ *  the contents of F when the cache was written; the alphabet size and
+ *  characters; the numbers of slots, pawls and rotors; and for each
+ *  rotor its name (a length and chars), its kind ('R', 'N' or 'M'), its
+ *  permutation as a table of ints and, if it moves, its notches as
+ *  bitmask words.  A cache whose digest does not match F is ignored.
+ *  @author Yulan Rong
+ */
+class ConfigCache {
+
+    /** A cache for the configuration file named SOURCE. */
+    ConfigCache(String source) {
+        _cache = source + SUFFIX;
+        try {
+            _digest = MessageDigest.getInstance("SHA-256")
+                .digest(Files.readAllBytes(Paths.get(source)));
+        } catch (IOException excp) {
+            throw error("could not open %s", source);
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("SHA-256 is not available");
+        }
+    }
+
+    /** Return the configuration in my cache file, or null if there is
+     *  none or it is out of date or unreadable. */
+    Configuration load() {
+        if (!Files.isRegularFile(Paths.get(_cache))) {
+            return null;
+        }
+        try (FileChannel in = FileChannel.open(Paths.get(_cache),
+                                               StandardOpenOption.READ)) {
+            MappedByteBuffer map =
+                in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            byte[] digest = new byte[_digest.length];
+            if (map.getInt() != MAGIC) {
+                return null;
+            }
+            map.get(digest);
+            if (!Arrays.equals(digest, _digest)) {
+                return null;
+            }
+            Alphabet alphabet = Alphabet.of(chars(map, map.getInt()));
+            int size = alphabet.size();
+            int numRotors = map.getInt(), pawls = map.getInt();
+            List<Rotor> rotors = new ArrayList<>();
+            for (int n = map.getInt(); n > 0; n -= 1) {
+                String name = chars(map, map.getInt());
+                char kind = (char) map.get();
+                int[] forward = new int[size];
+                map.asIntBuffer().get(forward);
+                map.position(map.position() + size * Integer.BYTES);
+                Permutation perm = new Permutation(forward, alphabet);
+                if (kind == 'R') {
+                    rotors.add(new Reflector(name, perm));
+                } else if (kind == 'N') {
+                    rotors.add(new FixedRotor(name, perm));
+                } else {
+                    rotors.add(new MovingRotor(name, perm,
+                                               notches(map, alphabet)));
+                }
+            }
+            return new Configuration(alphabet, numRotors, pawls, rotors);
+        } catch (IOException | RuntimeException | InternalError excp) {
+            return null;
+        }
+    }
+
+    /** Write CONFIG, compiled from my configuration file, to my cache
+     *  file.  The cache is written to a temporary file beside it and
+     *  moved into place, so that other runs mapping the old cache never
+     *  see it change.  Failure to write it is not an error. */
+    void store(Configuration config) {
+        Path cache = Paths.get(_cache).toAbsolutePath();
+        Path temp;
+        try {
+            temp = Files.createTempFile(cache.getParent(),
+                                        cache.getFileName().toString(),
+                                        ".tmp");
+        } catch (IOException excp) {
+            return;
+        }
+        try {
+            write(config, temp);
+            try {
+                Files.move(temp, cache, StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException excp) {
+                Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException excp) {
+            temp.toFile().delete();
+        }
+    }
+
+    /** Write CONFIG, compiled from my configuration file, to FILE. */
+    private void write(Configuration config, Path file) throws IOException {
+        Alphabet alphabet = config.alphabet();
+        int size = alphabet.size();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        new FileOutputStream(file.toFile())))) {
+            out.writeInt(MAGIC);
+            out.write(_digest);
+            out.writeInt(size);
+            for (int i = 0; i < size; i += 1) {
+                out.writeChar(alphabet.toChar(i));
+            }
+            out.writeInt(config.numRotors());
+            out.writeInt(config.numPawls());
+            out.writeInt(config.numAvailable());
+            for (int r = 0; r < config.numAvailable(); r += 1) {
+                Rotor rotor = config.rotor(r);
+                out.writeInt(rotor.name().length());
+                out.writeChars(rotor.name());
+                out.writeByte(rotor.reflecting() ? 'R'
+                              : rotor.rotates() ? 'M' : 'N');
+                int[] forward = config.forward(r);
+                for (int k = 0; k < size; k += 1) {
+                    out.writeInt(forward[k]);
+                }
+                if (rotor.rotates()) {
+                    for (long word : config.notches(r)) {
+                        out.writeLong(word);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Return the next N chars of MAP as a String. */
+    private static String chars(MappedByteBuffer map, int n) {
+        char[] result = new char[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = map.getChar();
+        }
+        return new String(result);
+    }
+
+    /** Return the notches in the next bitmask words of MAP as characters
+     *  of ALPHABET. */
+    private static String notches(MappedByteBuffer map, Alphabet alphabet) {
+        int size = alphabet.size();
+        StringBuilder result = new StringBuilder();
+        for (int w = 0; w < (size + Long.SIZE - 1) / Long.SIZE; w += 1) {
+            long word = map.getLong();
+            for (int b = 0; b < Long.SIZE && w * Long.SIZE + b < size;
+                 b += 1) {
+                if ((word & (1L << b)) != 0) {
+                    result.append(alphabet.toChar(w * Long.SIZE + b));
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    /** Suffix of cache file names. */
+    static final String SUFFIX = ".cache";
+
+    /** First word of a cache file. */
+    static final int MAGIC = 0x45434331;
+
+    /** Name of the cache file. */
+    private final String _cache;
+
+    /** Digest of the contents of the configuration file. */
+    private final byte[] _digest;
+}
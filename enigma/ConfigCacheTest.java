@@ -0,0 +1,121 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.MachineTest.navalConfiguration;
+import static enigma.MachineTest.setUp;
+
+/** The suite of all JUnit tests for the ConfigCache class.
+ *  @author Yulan Rong
+ */
+public class ConfigCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Write TEXT to FILE. */
+    private static void write(File file, String text) throws IOException {
+        try (Writer out = new FileWriter(file)) {
+            out.write(text);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRoundTrip() throws IOException {
+        File source = File.createTempFile("enigma", ".conf");
+        File cached = new File(source.getPath() + ConfigCache.SUFFIX);
+        try {
+            write(source, "naval rotors");
+            assertNull(new ConfigCache(source.getPath()).load());
+            Configuration config = navalConfiguration();
+            new ConfigCache(source.getPath()).store(config);
+            Configuration loaded = new ConfigCache(source.getPath()).load();
+            assertNotNull(loaded);
+            assertEquals(config.numRotors(), loaded.numRotors());
+            assertEquals(config.numPawls(), loaded.numPawls());
+            assertEquals(config.numAvailable(), loaded.numAvailable());
+            for (int r = 0; r < config.numAvailable(); r += 1) {
+                assertEquals(config.rotor(r).name(), loaded.rotor(r).name());
+                assertArrayEquals(config.forward(r), loaded.forward(r));
+                assertArrayEquals(config.notches(r), loaded.notches(r));
+                assertEquals(config.rotor(r).reflecting(),
+                             loaded.rotor(r).reflecting());
+                assertEquals(config.rotor(r).rotates(),
+                             loaded.rotor(r).rotates());
+            }
+            Machine m1 = config.newMachine(), m2 = loaded.newMachine();
+            setUp(m1, "AXLE");
+            setUp(m2, "AXLE");
+            String msg = MachineTest.randomMessage(2000, 7);
+            assertEquals(m1.convert(msg), m2.convert(msg));
+        } finally {
+            source.delete();
+            cached.delete();
+        }
+    }
+
+    @Test
+    public void checkStaleCacheIgnored() throws IOException {
+        File source = File.createTempFile("enigma", ".conf");
+        File cached = new File(source.getPath() + ConfigCache.SUFFIX);
+        try {
+            write(source, "naval rotors");
+            new ConfigCache(source.getPath()).store(navalConfiguration());
+            write(source, "naval rotors, edited");
+            assertNull(new ConfigCache(source.getPath()).load());
+            write(cached, "not a cache");
+            assertNull(new ConfigCache(source.getPath()).load());
+        } finally {
+            source.delete();
+            cached.delete();
+        }
+    }
+
+    @Test
+    public void checkStoreLeavesMappedCache() throws IOException {
+        File source = File.createTempFile("enigma", ".conf");
+        File cached = new File(source.getPath() + ConfigCache.SUFFIX);
+        try {
+            write(source, "naval rotors");
+            new ConfigCache(source.getPath()).store(navalConfiguration());
+            byte[] before = Files.readAllBytes(cached.toPath());
+            try (FileChannel in = FileChannel.open(cached.toPath(),
+                                                   StandardOpenOption.READ)) {
+                MappedByteBuffer map =
+                    in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+                new ConfigCache(source.getPath())
+                    .store(BombeTest.smallConfiguration());
+                byte[] mapped = new byte[before.length];
+                map.get(mapped);
+                assertArrayEquals(before, mapped);
+            }
+            Configuration loaded = new ConfigCache(source.getPath()).load();
+            assertEquals(BombeTest.smallConfiguration().numAvailable(),
+                         loaded.numAvailable());
+            File[] left = source.getParentFile().listFiles(
+                (dir, name) -> name.startsWith(cached.getName())
+                               && !name.equals(cached.getName()));
+            assertEquals(0, left.length);
+        } finally {
+            source.delete();
+            cached.delete();
+        }
+    }
+}
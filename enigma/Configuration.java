@@ -0,0 +1,245 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/** The immutable part of an enigma machine: its alphabet, its numbers of
+ *  slots and pawls, and the available rotors, each compiled once into
+ *  the tables Machine uses.  One Configuration may back any number of
+ *  Machines, each holding its own rotor choice, settings and plugboard,
+ *  on any number of threads.
+ *  @author Yulan Rong
+ */
+class Configuration {
+
+    /** A configuration with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  0 <= PAWLS < NUMROTORS pawls, and available rotors ALLROTORS. */
+    Configuration(Alphabet alpha, int numRotors, int pawls,
+                  Collection<Rotor> allRotors) {
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _rotors = allRotors.toArray(new Rotor[0]);
+        _reflecting = new boolean[_rotors.length];
+        _rotates = new boolean[_rotors.length];
+        for (int r = 0; r < _rotors.length; r += 1) {
+            _reflecting[r] = _rotors[r].reflecting();
+            _rotates[r] = _rotors[r].rotates();
+        }
+        buildIndex();
+        int size = alpha.size();
+        _forward = new int[_rotors.length][];
+        _inverse = new int[_rotors.length][];
+        _notches = new long[_rotors.length][];
+        for (int r = 0; r < _rotors.length; r += 1) {
+            Permutation perm = _rotors[r].permutation();
+            _forward[r] = new int[2 * size];
+            _inverse[r] = new int[2 * size];
+            for (int k = 0; k < 2 * size; k += 1) {
+                _forward[r][k] = perm.permute(k);
+                _inverse[r][k] = perm.invert(k);
+            }
+            _notches[r] = new long[(size + Long.SIZE - 1) / Long.SIZE];
+            for (int k = 0; k < size; k += 1) {
+                if (_rotates[r] && _rotors[r].notchAt(k)) {
+                    _notches[r][k / Long.SIZE] |= 1L << k;
+                }
+            }
+        }
+    }
+
+    /** Fill in _names, an open-addressed table of my rotor numbers
+     *  hashed by name, ignoring case.  Where names repeat, the first
+     *  rotor wins. */
+    private void buildIndex() {
+        _names = new int[Integer.highestOneBit(_rotors.length * 2 + 1) << 1];
+        Arrays.fill(_names, -1);
+        for (int r = 0; r < _rotors.length; r += 1) {
+            if (find(_rotors[r].name()) < 0) {
+                int h = hash(_rotors[r].name());
+                while (_names[h] >= 0) {
+                    h = (h + 1) & (_names.length - 1);
+                }
+                _names[h] = r;
+            }
+        }
+    }
+
+    /** Return the starting slot of NAME in _names. */
+    private int hash(String name) {
+        int h = 0;
+        for (int i = 0; i < name.length(); i += 1) {
+            char c = name.charAt(i);
+            h = h * HASH_MULTIPLIER
+                + Character.toLowerCase(Character.toUpperCase(c));
+        }
+        return (h ^ (h >>> HASH_SHIFT)) & (_names.length - 1);
+    }
+
+    /** Return a new Machine in this configuration, with no rotors
+     *  inserted. */
+    Machine newMachine() {
+        return new Machine(this);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return the number of available rotors. */
+    int numAvailable() {
+        return _rotors.length;
+    }
+
+    /** Return available rotor #R.  Machines never change its setting. */
+    Rotor rotor(int r) {
+        return _rotors[r];
+    }
+
+    /** Return the number of the first available rotor named NAME,
+     *  ignoring case, or -1 if there is none. */
+    int find(String name) {
+        for (int h = hash(name); _names[h] >= 0;
+             h = (h + 1) & (_names.length - 1)) {
+            if (_rotors[_names[h]].name().equalsIgnoreCase(name)) {
+                return _names[h];
+            }
+        }
+        return -1;
+    }
+
+    /** Return true iff available rotor #R is a reflector. */
+    boolean reflecting(int r) {
+        return _reflecting[r];
+    }
+
+    /** Return true iff available rotor #R moves. */
+    boolean rotates(int r) {
+        return _rotates[r];
+    }
+
+    /** Return every order of my available rotors that fits my slots, as
+     *  arrays of names for Machine.insertRotors: a reflector, then rotors
+     *  that neither move nor reflect, then moving rotors, each used at
+     *  most once. */
+    List<String[]> orders() {
+        List<String[]> result = new ArrayList<>();
+        extendOrder(new String[_numRotors], 0, new boolean[_rotors.length],
+                    result);
+        return result;
+    }
+
+    /** Add to RESULT every completion of ORDER, whose first SLOT entries
+     *  are filled, using only the available rotors not marked in USED. */
+    private void extendOrder(String[] order, int slot, boolean[] used,
+                             List<String[]> result) {
+        if (slot == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        int firstPawl = _numRotors - _pawls;
+        for (int r = 0; r < used.length; r += 1) {
+            boolean fits = slot == 0 ? _reflecting[r]
+                : slot < firstPawl ? !_rotates[r] && !_reflecting[r]
+                : _rotates[r];
+            if (fits && !used[r]) {
+                used[r] = true;
+                order[slot] = _rotors[r].name();
+                extendOrder(order, slot + 1, used, result);
+                used[r] = false;
+            }
+        }
+    }
+
+    /** Return the number of initial settings of a rotor order, or -1 if
+     *  it exceeds LIMIT. */
+    long numSettings(long limit) {
+        long result = 1;
+        for (int i = 1; i < _numRotors; i += 1) {
+            if (result > limit / _alphabet.size()) {
+                return -1;
+            }
+            result *= _alphabet.size();
+        }
+        return result;
+    }
+
+    /** Return initial setting #N, for 0 <= N < numSettings(...), as a
+     *  string for Machine.setRotors.  Settings are numbered with the
+     *  rightmost rotor changing fastest. */
+    String setting(long n) {
+        int size = _alphabet.size();
+        char[] result = new char[_numRotors - 1];
+        for (int i = result.length - 1; i >= 0; i -= 1) {
+            result[i] = _alphabet.toChar((int) (n % size));
+            n /= size;
+        }
+        return new String(result);
+    }
+
+    /** Return the permutation of rotor #R applied to k mod the alphabet
+     *  size, at index k for 0 <= k < 2 * size.  Not to be modified. */
+    int[] forward(int r) {
+        return _forward[r];
+    }
+
+    /** Return the inverse of forward(R), laid out likewise. */
+    int[] inverse(int r) {
+        return _inverse[r];
+    }
+
+    /** Return the notches of rotor #R as a bitmask: bit k is set iff it
+     *  rotates and has a notch at setting k.  Not to be modified. */
+    long[] notches(int r) {
+        return _notches[r];
+    }
+
+    /** The common alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Available rotors. */
+    private final Rotor[] _rotors;
+
+    /** _reflecting[r] is true iff rotor r is a reflector. */
+    private final boolean[] _reflecting;
+
+    /** _rotates[r] is true iff rotor r moves. */
+    private final boolean[] _rotates;
+
+    /** Open-addressed table of rotor numbers by name; -1 when empty. */
+    private int[] _names;
+
+    /** Multiplier of the name hash. */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /** Shift folding the high bits of the name hash into the low. */
+    private static final int HASH_SHIFT = 16;
+
+    /** Doubled forward tables of the rotors. */
+    private final int[][] _forward;
+
+    /** Doubled inverse tables of the rotors. */
+    private final int[][] _inverse;
+
+    /** Notch bitmasks of the rotors. */
+    private final long[][] _notches;
+}
@@ -0,0 +1,122 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.error;
+
+/** The cycle type of a permutation: the lengths of its cycles, fixed
+ *  points included, in decreasing order.  Two permutations of the same
+ *  size have the same cycle type iff they are conjugate, which is what
+ *  makes cycle types useful as characteristics of machine settings.
+ *  Cycle types are values, with equals and hashCode, so that they can
+ *  key maps and catalogs; their canonical written form, from toString
+ *  and parse, is the lengths separated by blanks, as in "13 13".
+ *  @author Yulan Rong
+ */
+final class CycleType implements Comparable<CycleType> {
+
+    /** The cycle type whose cycle lengths are LENGTHS, in any order. */
+    CycleType(int[] lengths) {
+        _lengths = lengths.clone();
+        for (int length : _lengths) {
+            if (length <= 0) {
+                throw new EnigmaException("Cycle lengths must be positive.");
+            }
+        }
+        Arrays.sort(_lengths);
+        for (int i = 0, j = _lengths.length - 1; i < j; i += 1, j -= 1) {
+            int t = _lengths[i];
+            _lengths[i] = _lengths[j];
+            _lengths[j] = t;
+        }
+        _hash = Arrays.hashCode(_lengths);
+    }
+
+    /** Return the cycle type of the permutation taking each index k to
+     *  FORWARD[k]. */
+    static CycleType of(int[] forward) {
+        int n = forward.length, count = 0;
+        int[] lengths = new int[n];
+        boolean[] seen = new boolean[n];
+        for (int start = 0; start < n; start += 1) {
+            if (!seen[start]) {
+                int length = 0;
+                for (int k = start; !seen[k]; k = forward[k]) {
+                    seen[k] = true;
+                    length += 1;
+                }
+                lengths[count] = length;
+                count += 1;
+            }
+        }
+        return new CycleType(Arrays.copyOf(lengths, count));
+    }
+
+    /** Return the cycle type written as TEXT in the form given by
+     *  toString. */
+    static CycleType parse(String text) {
+        String[] words = text.trim().split("\\s+");
+        int[] lengths = new int[words.length];
+        for (int i = 0; i < words.length; i += 1) {
+            if (!words[i].matches("\\d{1,9}")) {
+                throw error("%s is not a cycle type", text);
+            }
+            lengths[i] = Integer.parseInt(words[i]);
+        }
+        return new CycleType(lengths);
+    }
+
+    /** Return my cycle lengths, in decreasing order. */
+    int[] lengths() {
+        return _lengths.clone();
+    }
+
+    /** Return the number of my cycles. */
+    int numCycles() {
+        return _lengths.length;
+    }
+
+    /** Return the size of the permutations I describe. */
+    int size() {
+        int result = 0;
+        for (int length : _lengths) {
+            result += length;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof CycleType
+            && Arrays.equals(_lengths, ((CycleType) obj)._lengths);
+    }
+
+    @Override
+    public int hashCode() {
+        return _hash;
+    }
+
+    /** Order cycle types by their lengths, compared lexicographically. */
+    @Override
+    public int compareTo(CycleType other) {
+        return Arrays.compare(_lengths, other._lengths);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int length : _lengths) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(length);
+        }
+        return result.toString();
+    }
+
+    /** Cycle lengths, in decreasing order. */
+    private final int[] _lengths;
+
+    /** Hash code of _lengths. */
+    private final int _hash;
+}
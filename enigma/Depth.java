@@ -0,0 +1,308 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.error;
+
+/** A search of a corpus of ciphertexts for pairs in depth: messages
+ *  enciphered with the same key stream, whose plaintexts therefore agree
+ *  wherever their ciphertexts do.  Such pairs coincide (have equal
+ *  characters at equal positions) about as often as two plaintexts,
+ *  well above the 1/size rate of unrelated ciphertexts, so every pair of
+ *  messages is scored by how far its coincidences over their common
+ *  length exceed that rate, in standard deviations.
+ *
+ *  Each message is held as the indices of its characters, one byte each,
+ *  packed eight to a long, so that one XOR compares eight positions and
+ *  the zero bytes of the result are counted with a few masks and a
+ *  bitCount.  The pairs are split into tiles of TILE by TILE messages,
+ *  small enough that both rows of a tile stay in cache, and the tiles are
+ *  shared among the threads of a ForkJoinPool.
+ *  @author Yulan Rong
+ */
+class Depth {
+
+    /** A search among MESSAGES, strings of characters in ALPHABET,
+     *  numbered from 0 in order. */
+    Depth(Alphabet alphabet, List<String> messages) {
+        _size = alphabet.size();
+        if (_size > Alphabet.BYTES) {
+            throw error("depth search needs an alphabet of at most %d "
+                        + "characters", Alphabet.BYTES);
+        }
+        _count = messages.size();
+        _lengths = new int[_count];
+        _offsets = new int[_count + 1];
+        long words = 0;
+        for (int m = 0; m < _count; m += 1) {
+            _lengths[m] = messages.get(m).length();
+            words += (_lengths[m] + Long.BYTES - 1) / Long.BYTES;
+            if (words > Integer.MAX_VALUE) {
+                throw error("corpus too large");
+            }
+            _offsets[m + 1] = (int) words;
+        }
+        _words = new long[(int) words];
+        for (int m = 0; m < _count; m += 1) {
+            String message = messages.get(m);
+            for (int k = 0; k < message.length(); k += 1) {
+                char c = message.charAt(k);
+                if (!alphabet.contains(c)) {
+                    throw error("message %d: character not in the "
+                                + "alphabet: %c", m, c);
+                }
+                int shift = k % Long.BYTES * Byte.SIZE;
+                _words[_offsets[m] + k / Long.BYTES] |=
+                    (long) alphabet.toInt(c) << shift;
+            }
+        }
+    }
+
+    /** Score only pairs of messages whose common length is at least
+     *  N > 0. */
+    void setMinOverlap(int n) {
+        if (n <= 0) {
+            throw error("minimum overlap must be positive");
+        }
+        _minOverlap = n;
+    }
+
+    /** Return the best K > 0 pairs, highest score first, running on
+     *  POOL. */
+    List<Pair> search(int k, ForkJoinPool pool) {
+        if (k <= 0) {
+            throw error("need at least one pair");
+        }
+        _top = k;
+        int rows = (_count + TILE - 1) / TILE;
+        return pool.invoke(new PairTask(0, (long) rows * (rows + 1) / 2));
+    }
+
+    /** Return the number of positions at which messages A and B agree
+     *  over their first N characters. */
+    int coincidences(int a, int b, int n) {
+        int x = _offsets[a], y = _offsets[b];
+        int full = n / Long.BYTES;
+        int result = 0;
+        for (int w = 0; w < full; w += 1) {
+            long diff = _words[x + w] ^ _words[y + w];
+            result += Long.bitCount(zeroBytes(diff));
+        }
+        int rest = n % Long.BYTES;
+        if (rest > 0) {
+            long mask = (1L << (rest * Byte.SIZE)) - 1;
+            result += Long.bitCount(
+                    zeroBytes(_words[x + full] ^ _words[y + full]) & mask);
+        }
+        return result;
+    }
+
+    /** Return X with the high bit of each of its bytes that is zero set,
+     *  and every other bit clear. */
+    private static long zeroBytes(long x) {
+        long t = (x & LOW_SEVEN) + LOW_SEVEN;
+        return ~(t | x | LOW_SEVEN);
+    }
+
+    /** Return the score of C coincidences among N positions: their
+     *  excess over the number expected of unrelated messages, in
+     *  standard deviations. */
+    private double score(int c, int n) {
+        double p = 1.0 / _size;
+        return (c - n * p) / Math.sqrt(n * p * (1 - p));
+    }
+
+    /** A pair of messages, with its coincidences. */
+    static class Pair implements Comparable<Pair> {
+
+        /** Messages #FIRST < #SECOND, which agree at COINCIDENCES of the
+         *  OVERLAP positions they share, scoring SCORE. */
+        Pair(int first, int second, int coincidences, int overlap,
+             double score) {
+            _first = first;
+            _second = second;
+            _coincidences = coincidences;
+            _overlap = overlap;
+            _score = score;
+        }
+
+        /** Return the number of the first message. */
+        int first() {
+            return _first;
+        }
+
+        /** Return the number of the second message. */
+        int second() {
+            return _second;
+        }
+
+        /** Return the number of positions at which they agree. */
+        int coincidences() {
+            return _coincidences;
+        }
+
+        /** Return their common length. */
+        int overlap() {
+            return _overlap;
+        }
+
+        /** Return the score of their coincidences. */
+        double score() {
+            return _score;
+        }
+
+        /** Order pairs best first: by decreasing score, then by message
+         *  numbers. */
+        @Override
+        public int compareTo(Pair other) {
+            int result = Double.compare(other._score, _score);
+            if (result == 0) {
+                result = Integer.compare(_first, other._first);
+            }
+            if (result == 0) {
+                result = Integer.compare(_second, other._second);
+            }
+            return result;
+        }
+
+        /** First message number. */
+        private final int _first;
+
+        /** Second message number. */
+        private final int _second;
+
+        /** Positions at which they agree. */
+        private final int _coincidences;
+
+        /** Common length. */
+        private final int _overlap;
+
+        /** Score. */
+        private final double _score;
+    }
+
+    /** Return the best of the pairs in X and Y, at most _top of them,
+     *  best first.  X and Y must be ordered likewise. */
+    private List<Pair> merge(List<Pair> x, List<Pair> y) {
+        List<Pair> result = new ArrayList<>(Math.min(_top,
+                                                     x.size() + y.size()));
+        int i = 0, j = 0;
+        while (result.size() < _top && (i < x.size() || j < y.size())) {
+            if (j == y.size()
+                || i < x.size() && x.get(i).compareTo(y.get(j)) <= 0) {
+                result.add(x.get(i++));
+            } else {
+                result.add(y.get(j++));
+            }
+        }
+        return result;
+    }
+
+    /** Scores the pairs of a range of tiles.  Tiles are numbered row by
+     *  row along the upper triangle: tile (r, s), for r <= s, holds the
+     *  pairs of a message of block r with a later one of block s, where
+     *  block r is messages #r*TILE to #(r+1)*TILE-1. */
+    private class PairTask extends RecursiveTask<List<Pair>> {
+
+        /** A task scoring tiles FROM to TO (exclusive). */
+        PairTask(long from, long to) {
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected List<Pair> compute() {
+            if (_to - _from > 1) {
+                long mid = (_from + _to) >>> 1;
+                PairTask left = new PairTask(_from, mid);
+                left.fork();
+                List<Pair> right = new PairTask(mid, _to).compute();
+                return merge(left.join(), right);
+            }
+            List<Pair> result = new ArrayList<>();
+            if (_from == _to) {
+                return result;
+            }
+            int rows = (_count + TILE - 1) / TILE;
+            int r = 0;
+            long t = _from;
+            while (t >= rows - r) {
+                t -= rows - r;
+                r += 1;
+            }
+            int s = r + (int) t;
+            PriorityQueue<Pair> best = new PriorityQueue<>(
+                    (x, y) -> y.compareTo(x));
+            int lastA = Math.min(_count, (r + 1) * TILE);
+            int lastB = Math.min(_count, (s + 1) * TILE);
+            for (int a = r * TILE; a < lastA; a += 1) {
+                if (_lengths[a] < _minOverlap) {
+                    continue;
+                }
+                for (int b = Math.max(a + 1, s * TILE); b < lastB; b += 1) {
+                    int n = Math.min(_lengths[a], _lengths[b]);
+                    if (n < _minOverlap) {
+                        continue;
+                    }
+                    int c = coincidences(a, b, n);
+                    double score = score(c, n);
+                    if (best.size() == _top && score < best.peek()._score) {
+                        continue;
+                    }
+                    Pair pair = new Pair(a, b, c, n, score);
+                    if (best.size() < _top) {
+                        best.add(pair);
+                    } else if (pair.compareTo(best.peek()) < 0) {
+                        best.poll();
+                        best.add(pair);
+                    }
+                }
+            }
+            result.addAll(best);
+            result.sort(null);
+            return result;
+        }
+
+        /** First tile to score. */
+        private final long _from;
+
+        /** Tile after the last to score. */
+        private final long _to;
+    }
+
+    /** Number of messages in each block of a tile. */
+    static final int TILE = 64;
+
+    /** Default minimum common length of the pairs scored. */
+    static final int MIN_OVERLAP = 20;
+
+    /** The low seven bits of every byte of a long. */
+    private static final long LOW_SEVEN = 0x7f7f7f7f7f7f7f7fL;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Number of messages. */
+    private final int _count;
+
+    /** Lengths of the messages. */
+    private final int[] _lengths;
+
+    /** Message #m occupies _words[_offsets[m]] to
+     *  _words[_offsets[m+1]-1]. */
+    private final int[] _offsets;
+
+    /** Character indices of all messages, a byte each, eight to a long
+     *  starting from the low byte. */
+    private final long[] _words;
+
+    /** Minimum common length of the pairs scored. */
+    private int _minOverlap = MIN_OVERLAP;
+
+    /** Number of pairs to report. */
+    private int _top;
+}
@@ -0,0 +1,128 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.MachineTest.navalConfiguration;
+import static enigma.MachineTest.randomMessage;
+import static enigma.TestUtils.UPPER;
+
+/** The suite of all JUnit tests for the Depth class.
+ *  @author Yulan Rong
+ */
+public class DepthTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Letters drawn for plaintexts, as often as each should appear. */
+    static final String SKEWED = "EEEEEEEEEETTTTTTAAAAAOOOOIIINNNSSHRDLU";
+
+    /** Return a random plaintext of N characters with skewed letter
+     *  frequencies, from a generator seeded with SEED. */
+    static String plaintext(int n, long seed) {
+        Random random = new Random(seed);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            result.append(SKEWED.charAt(random.nextInt(SKEWED.length())));
+        }
+        return result.toString();
+    }
+
+    /** Return the encipherment of PLAIN with the naval rotors at initial
+     *  setting SETTING. */
+    static String encipher(String plain, String setting) {
+        Machine m = navalConfiguration().newMachine();
+        Session.setUp(m, "* B Beta III IV I " + setting + " (HQ) (EX)");
+        return m.convert(plain);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkCoincidences() {
+        Random random = new Random(3);
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 8; i += 1) {
+            char[] message = new char[37 + i * 5];
+            for (int k = 0; k < message.length; k += 1) {
+                message[k] = (char) (random.nextInt(3) == 0 ? k % 4 * 85
+                                     : random.nextInt(Alphabet.BYTES));
+            }
+            messages.add(new String(message));
+        }
+        Depth depth = new Depth(Alphabet.bytes(), messages);
+        for (int a = 0; a < messages.size(); a += 1) {
+            for (int b = 0; b < messages.size(); b += 1) {
+                String x = messages.get(a), y = messages.get(b);
+                int n = Math.min(x.length(), y.length());
+                int expected = 0;
+                for (int k = 0; k < n; k += 1) {
+                    expected += x.charAt(k) == y.charAt(k) ? 1 : 0;
+                }
+                assertEquals(expected, depth.coincidences(a, b, n));
+            }
+        }
+    }
+
+    @Test
+    public void checkFindsDepths() {
+        Random random = new Random(7);
+        List<String> messages = new ArrayList<>();
+        String[] settings = new String[150];
+        for (int i = 0; i < settings.length; i += 1) {
+            settings[i] = randomMessage(4, random.nextLong());
+        }
+        settings[131] = settings[12];
+        settings[140] = settings[77];
+        for (int i = 0; i < settings.length; i += 1) {
+            messages.add(encipher(plaintext(400 + i, i), settings[i]));
+        }
+        messages.set(30, "");
+        Depth depth = new Depth(UPPER, messages);
+        List<Depth.Pair> pairs = depth.search(2, new ForkJoinPool(3));
+        assertEquals(2, pairs.size());
+        List<String> found = new ArrayList<>();
+        for (Depth.Pair pair : pairs) {
+            found.add(pair.first() + " " + pair.second());
+            assertEquals(Math.min(messages.get(pair.first()).length(),
+                                  messages.get(pair.second()).length()),
+                         pair.overlap());
+        }
+        assertTrue(found.contains("12 131"));
+        assertTrue(found.contains("77 140"));
+        assertTrue(pairs.get(0).score() >= pairs.get(1).score());
+    }
+
+    @Test
+    public void checkTopOrderMatchesAllPairs() {
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 200; i += 1) {
+            messages.add(plaintext(20 + i % 13, i));
+        }
+        Depth depth = new Depth(UPPER, messages);
+        int pairs = 200 * 199 / 2;
+        List<Depth.Pair> all = depth.search(pairs, new ForkJoinPool(2));
+        assertEquals(pairs, all.size());
+        List<Depth.Pair> top = depth.search(25, new ForkJoinPool(1));
+        assertEquals(25, top.size());
+        for (int i = 0; i < top.size(); i += 1) {
+            assertEquals(0, all.get(i).compareTo(top.get(i)));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkCharacterNotInAlphabet() {
+        new Depth(UPPER, List.of("HELLO", "WORLD!"));
+    }
+}
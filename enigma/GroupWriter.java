@@ -0,0 +1,70 @@
+package enigma;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/** A Writer that prints each line of converted characters in groups of
+ *  five separated by blanks, as Main does for its output.  A blank
+ *  follows every complete group, and endLine() ends the line.
+ *  @author Yulan Rong
+ */
+class GroupWriter extends FilterWriter {
+
+    /** Number of characters in a group. */
+    static final int GROUP = 5;
+
+    /** A GroupWriter sending its output to OUT. */
+    GroupWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        out.write(c);
+        _column += 1;
+        if (_column == GROUP) {
+            out.write(' ');
+            _column = 0;
+        }
+    }
+
+    @Override
+    public void write(char[] buf, int off, int len) throws IOException {
+        int end = off + len;
+        while (off < end) {
+            int run = Math.min(end - off, GROUP - _column);
+            out.write(buf, off, run);
+            off += run;
+            _column += run;
+            if (_column == GROUP) {
+                out.write(' ');
+                _column = 0;
+            }
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        int end = off + len;
+        while (off < end) {
+            int run = Math.min(end - off, GROUP - _column);
+            out.write(str, off, run);
+            off += run;
+            _column += run;
+            if (_column == GROUP) {
+                out.write(' ');
+                _column = 0;
+            }
+        }
+    }
+
+    /** End the current line, whether or not its last group is full. */
+    void endLine() throws IOException {
+        out.write(System.lineSeparator());
+        _column = 0;
+    }
+
+    /** Number of characters in the current, incomplete group. */
+    private int _column;
+}
@@ -0,0 +1,120 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded, least-recently-used cache of the keyings produced by '*'
+ *  setting lines for Machines of one configuration, so that a setting
+ *  line seen before re-keys a Machine by copying its state rather than
+ *  by parsing the line again.  Setting lines that differ only in the
+ *  whitespace between their tokens share an entry.  A KeyCache may be
+ *  shared by any number of threads.
+ *  @author Yulan Rong
+ */
+class KeyCache {
+
+    /** A cache of at most CAPACITY keyings for Machines of CONFIG. */
+    KeyCache(Configuration config, int capacity) {
+        if (capacity <= 0) {
+            throw new EnigmaException("cache capacity must be positive");
+        }
+        _config = config;
+        _entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, Machine.Keying> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Set M, a Machine of my configuration, according to SETTINGS, line
+     *  number LINE of its input, exactly as Session.setUp does, using a
+     *  cached keying if there is one.  Return the resulting keying of
+     *  M. */
+    Machine.Keying setUp(Machine M, String settings, int line) {
+        if (M.configuration() != _config) {
+            throw new EnigmaException("machine is of another configuration");
+        }
+        String key = normalize(settings);
+        Machine.Keying keying = key == null ? null : lookup(key);
+        if (keying != null) {
+            M.rekey(keying);
+            return keying;
+        }
+        Session.setUp(M, settings, line);
+        keying = M.keying();
+        if (key != null) {
+            synchronized (this) {
+                _entries.put(key, keying);
+            }
+        }
+        return keying;
+    }
+
+    /** Return the number of setting lines found in the cache. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of setting lines not found in the cache. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the number of keyings cached. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Return the keying cached for the normalized setting line KEY, or
+     *  null if there is none, counting the hit or miss. */
+    private synchronized Machine.Keying lookup(String key) {
+        Machine.Keying result = _entries.get(key);
+        if (result == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return result;
+    }
+
+    /** Return SETTINGS with its tokens separated by single blanks, or
+     *  null if it does not start with '*' and so cannot be valid. */
+    static String normalize(String settings) {
+        if (!settings.startsWith("*")) {
+            return null;
+        }
+        StringBuilder result = new StringBuilder(settings.length());
+        boolean blank = false;
+        for (int i = 0; i < settings.length(); i += 1) {
+            char c = settings.charAt(i);
+            if (Character.isWhitespace(c)) {
+                blank = true;
+            } else {
+                if (blank) {
+                    result.append(' ');
+                    blank = false;
+                }
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Default number of keyings cached. */
+    static final int CAPACITY = 256;
+
+    /** Configuration of the Machines I key. */
+    private final Configuration _config;
+
+    /** Cached keyings, indexed by normalized setting line, least recently
+     *  used first. */
+    private final LinkedHashMap<String, Machine.Keying> _entries;
+
+    /** Number of lookups that found a keying. */
+    private long _hits;
+
+    /** Number of lookups that found none. */
+    private long _misses;
+}
@@ -0,0 +1,79 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.MachineTest.navalConfiguration;
+import static enigma.MachineTest.randomMessage;
+
+/** The suite of all JUnit tests for the KeyCache class.
+ *  @author Yulan Rong
+ */
+public class KeyCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void checkNormalize() {
+        assertEquals("* B Beta III IV I AXLE (HQ) (EX)",
+                     KeyCache.normalize("*  B Beta\tIII IV I AXLE (HQ) (EX) "));
+        assertNull(KeyCache.normalize(" * B Beta III IV I AXLE"));
+    }
+
+    @Test
+    public void checkHitsAndMisses() {
+        Configuration config = navalConfiguration();
+        KeyCache keys = new KeyCache(config, 2);
+        Machine m = config.newMachine();
+        keys.setUp(m, "* B Beta III IV I AXLE (HQ)", 1);
+        keys.setUp(m, "* B  Beta III IV I AXLE (HQ)", 2);
+        keys.setUp(m, "* C Gamma I II III AAAA", 3);
+        keys.setUp(m, "* B Beta III IV I AXLE (HQ)", 4);
+        assertEquals(2, keys.hits());
+        assertEquals(2, keys.misses());
+        keys.setUp(m, "* B Beta I II III ZZZZ", 5);
+        keys.setUp(m, "* C Gamma I II III AAAA", 6);
+        assertEquals(2, keys.size());
+        assertEquals(4, keys.misses());
+    }
+
+    @Test
+    public void checkRekeyMatchesSetUp() {
+        Configuration config = navalConfiguration();
+        KeyCache keys = new KeyCache(config, KeyCache.CAPACITY);
+        String[] lines = {
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+            "* C Gamma V II VI QMZA (AB)",
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        };
+        String msg = randomMessage(3000, 11);
+        Machine cached = config.newMachine();
+        for (String line : lines) {
+            Machine fresh = config.newMachine();
+            Session.setUp(fresh, line);
+            keys.setUp(cached, line, 1);
+            assertEquals(fresh.convert(msg), cached.convert(msg));
+        }
+        assertEquals(1, keys.hits());
+    }
+
+    @Test
+    public void checkErrorsNotCached() {
+        Configuration config = navalConfiguration();
+        KeyCache keys = new KeyCache(config, KeyCache.CAPACITY);
+        Machine m = config.newMachine();
+        for (int i = 0; i < 2; i += 1) {
+            try {
+                keys.setUp(m, "* B Beta III III I AXLE", 1);
+                fail("repeated rotor accepted");
+            } catch (EnigmaException excp) {
+                assertEquals(0, keys.hits());
+            }
+        }
+        assertEquals(0, keys.size());
+    }
+}
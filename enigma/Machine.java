@@ -1,9 +1,17 @@
 package enigma;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-/** Class that represents a complete enigma machine.
+/** Class that represents a complete enigma machine.  The rotors, their
+ *  tables and the alphabet belong to a Configuration, which Machine only
+ *  reads; a Machine holds the state of one session (rotor choice,
+ *  settings, plugboard) and is used by one thread at a time.
  *  @author Yulan Rong
  */
 class Machine {
@@ -13,10 +21,30 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
-        _alphabet = alpha;
-        _numRotors = numRotors;
-        _pawls = pawls;
-        _allRotors = allRotors.toArray();
+        this(new Configuration(alpha, numRotors, pawls, allRotors));
+    }
+
+    /** A new Enigma machine in configuration CONFIG. */
+    Machine(Configuration config) {
+        _config = config;
+        _alphabet = config.alphabet();
+        _numRotors = config.numRotors();
+        _pawls = config.numPawls();
+        _size = _alphabet.size();
+        _chosen = new int[_numRotors];
+        _settings = new int[_numRotors];
+        _forward = new int[_numRotors][];
+        _inverse = new int[_numRotors][];
+        _notches = new long[_numRotors][];
+        _rotates = new boolean[_numRotors];
+        _reflecting = new boolean[_numRotors];
+        _start = new int[_pawls];
+        setPlugboard(null);
+    }
+
+    /** Return my configuration. */
+    Configuration configuration() {
+        return _config;
     }
 
 
@@ -34,146 +62,772 @@ class Machine {
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
-        _rotorsArray = new ArrayList<>();
-        _name = new ArrayList<>();
-
-        for (int i = 0; i < rotors.length; i += 1) {
-            for (int j = 0; j < _allRotors.length; j += 1) {
-                String s = rotors[i].toUpperCase();
-                if (s.equals(((Rotor) _allRotors[j]).
-                        name().toUpperCase())) {
-                    ((Rotor) _allRotors[j]).set(0);
-                    _rotorsArray.add((Rotor) _allRotors[j]);
-                    if (!_name.contains(s)) {
-                        _name.add(s);
-                    } else {
+        int[] chosen = new int[_numRotors];
+        int n = 0;
+        for (String name : rotors) {
+            int r = _config.find(name);
+            if (r >= 0) {
+                for (int j = 0; j < n && j < _numRotors; j += 1) {
+                    if (chosen[j] == r) {
                         throw new EnigmaException(
                                 "A rotor cannot be "
                                         + "repeated in "
                                         + "the setting line.");
                     }
                 }
+                if (n < _numRotors) {
+                    chosen[n] = r;
+                }
+                n += 1;
             }
         }
-        if (!_rotorsArray.get(0).reflecting()) {
+        if (n == 0 || !_config.reflecting(chosen[0])) {
             throw new EnigmaException(
                     "The first rotor must be a reflector");
         }
-        if (_rotorsArray.size() != _numRotors) {
+        if (n != _numRotors) {
             throw new EnigmaException("Number of rotors is not correct.");
         }
+        discardTable();
+        _odometer = null;
+        _orbit = null;
+        Arrays.fill(_start, 0);
+        _position = 0;
+        System.arraycopy(chosen, 0, _chosen, 0, _numRotors);
+        Arrays.fill(_settings, 0);
+        fillSlots();
+    }
+
+    /** Fill my per-slot arrays from the rotors numbered _chosen in my
+     *  configuration. */
+    private void fillSlots() {
+        for (int i = 0; i < _numRotors; i += 1) {
+            int r = _chosen[i];
+            _forward[i] = _config.forward(r);
+            _inverse[i] = _config.inverse(r);
+            _notches[i] = _config.notches(r);
+            _rotates[i] = _config.rotates(r);
+            _reflecting[i] = _config.reflecting(r);
+        }
+        _paths = null;
+    }
+
+    /** Return my current rotors, settings and plugboard, which must have
+     *  been set, as a Keying that rekey can restore on any Machine of my
+     *  configuration. */
+    Keying keying() {
+        discardTable();
+        return new Keying(_config, _chosen.clone(), _settings.clone(),
+                          _plug, odometer());
+    }
+
+    /** Set my rotors, settings and plugboard as recorded in KEY, exactly
+     *  as if the calls that produced it had been repeated. */
+    void rekey(Keying key) {
+        if (key._config != _config) {
+            throw new EnigmaException("keying is for another configuration");
+        }
+        discardTable();
+        System.arraycopy(key._chosen, 0, _chosen, 0, _numRotors);
+        fillSlots();
+        System.arraycopy(key._settings, 0, _settings, 0, _numRotors);
+        System.arraycopy(_settings, _numRotors - _pawls, _start, 0, _pawls);
+        _plug = key._plug;
+        _odometer = key._odometer;
+        _orbit = null;
+        _position = 0;
+    }
+
+    /** The contents of a StateTable, with what they were built for. */
+    private static final class Compiled {
+
+        /** Transitions NEXT and substitutions SUBST built for the
+         *  tableKey() KEY and plugboard table PLUG. */
+        Compiled(int[] key, int[] plug, int[] next, char[] subst) {
+            _key = key;
+            _plug = plug;
+            _next = next;
+            _subst = subst;
+        }
+
+        /** The tableKey() built for. */
+        private final int[] _key;
+
+        /** The plugboard built for, which no Machine modifies in
+         *  place. */
+        private final int[] _plug;
+
+        /** Transitions. */
+        private final int[] _next;
+
+        /** Substitutions. */
+        private final char[] _subst;
+    }
+
+    /** The rotors, settings and plugboard of a Machine, as recorded by
+     *  keying().  Immutable, so one Keying may serve any number of
+     *  Machines on any number of threads. */
+    static final class Keying {
+
+        /** A keying of a Machine of CONFIG with rotors numbered CHOSEN,
+         *  at SETTINGS, with plugboard table PLUG and stepping
+         *  ODOMETER. */
+        private Keying(Configuration config, int[] chosen, int[] settings,
+                       int[] plug, Odometer odometer) {
+            _config = config;
+            _chosen = chosen;
+            _settings = settings;
+            _plug = plug;
+            _odometer = odometer;
+        }
+
+        /** Configuration of the Machine. */
+        private final Configuration _config;
+
+        /** Rotor numbers in each slot. */
+        private final int[] _chosen;
+
+        /** Rotor settings. */
+        private final int[] _settings;
+
+        /** Plugboard table, which no Machine modifies in place. */
+        private final int[] _plug;
+
+        /** Stepping of the rotors. */
+        private final Odometer _odometer;
     }
 
     /** return the available rotors in array. */
     Object[] allRotors() {
-        return _allRotors;
+        Object[] result = new Object[_config.numAvailable()];
+        for (int r = 0; r < result.length; r += 1) {
+            result[r] = _config.rotor(r);
+        }
+        return result;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
+        discardTable();
         if (setting.length() != numRotors() - 1) {
             throw new EnigmaException(
                     "Fewer settings than rotors.");
         }
-        for (int i = 1; i < _rotorsArray.size(); i += 1) {
+        for (int i = 1; i < _numRotors; i += 1) {
             if (i <= _numRotors - _pawls - 1) {
-                if (_rotorsArray.get(i).rotates()
-                        || _rotorsArray.get(i).reflecting()) {
+                if (_rotates[i] || _reflecting[i]) {
                     throw new EnigmaException("It should be fixed rotor.");
                 }
-                if (!_alphabet.contains(setting.charAt(i - 1))) {
-                    throw new EnigmaException(
-                            "The initial positions "
-                                    + "string cannot contain "
-                                    + "characters not in the "
-                                    + "alphabet.");
-                } else {
-                    _rotorsArray.get(i).set(setting.charAt(i - 1));
-                }
+            } else if (!_rotates[i]) {
+                throw new EnigmaException("It should be moving rotor.");
             }
-            if (i >= _numRotors - _pawls) {
-                if (!_rotorsArray.get(i).rotates()) {
-                    throw new EnigmaException("It should be moving rotor.");
-                }
-                if (!_alphabet.contains(setting.charAt(i - 1))) {
-                    throw new EnigmaException(
-                            "The initial positions "
-                                    + "string cannot contain "
-                                    + "characters not in the "
-                                    + "alphabet.");
-                } else {
-                    _rotorsArray.get(i).set(setting.charAt(i - 1));
-                }
+            if (!_alphabet.contains(setting.charAt(i - 1))) {
+                throw new EnigmaException(
+                        "The initial positions "
+                                + "string cannot contain "
+                                + "characters not in the "
+                                + "alphabet.");
             }
+            _settings[i] = _alphabet.toInt(setting.charAt(i - 1));
         }
+        System.arraycopy(_settings, _numRotors - _pawls, _start, 0, _pawls);
+        _orbit = null;
+        _position = 0;
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
-        _plugboard = plugboard;
+        discardTable();
+        _plug = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            _plug[c] = plugboard == null ? c : plugboard.permute(c);
+        }
+    }
+
+    /** Have convert use a StateTable, precomputed for the current rotors
+     *  and plugboard, whenever that table fits within BUDGET bytes, and
+     *  evaluate the rotors one by one otherwise.  The tables kept for
+     *  reuse take at most BUDGET bytes together.  A BUDGET of 0 turns the
+     *  table off. */
+    void setCompiledBudget(long budget) {
+        discardTable();
+        _budget = budget;
+        _compiled.clear();
+    }
+
+    /** Return true iff convert is currently served from a StateTable. */
+    boolean compiled() {
+        return _table != null;
+    }
+
+    /** Set my rotors to the settings they will have after N more key
+     *  presses, without converting anything. */
+    void advanceBy(long n) {
+        if (n < 0) {
+            throw new EnigmaException("Cannot step the rotors backward.");
+        }
+        setStateAt(_position + n);
+    }
+
+    /** Set my rotors to the settings they have after OFFSET key presses
+     *  from the settings of the last setRotors (or insertRotors), that is,
+     *  just before converting character #OFFSET of a message begun there.
+     *  Unless a rotor under a pawl has notches at adjacent settings, this
+     *  takes time proportional to the square of the number of pawls,
+     *  whatever OFFSET (see Odometer.jump); otherwise it steps, or, once
+     *  OFFSET reaches the number of states, finds the orbit of those
+     *  settings. */
+    void setStateAt(long offset) {
+        if (offset < 0) {
+            throw new EnigmaException("Offset must not be negative.");
+        }
+        Odometer odometer = odometer();
+        if (odometer.closedForm()) {
+            int[] settings = _start.clone();
+            odometer.jump(settings, offset);
+            if (_table != null) {
+                _table.setState((int) odometer.pack(settings));
+            } else {
+                System.arraycopy(settings, 0, _settings,
+                                 _numRotors - _pawls, _pawls);
+            }
+            _position = offset;
+            return;
+        }
+        if (odometer.states() < 0) {
+            if (offset < _position) {
+                System.arraycopy(_start, 0, _settings,
+                                 _numRotors - _pawls, _pawls);
+                _position = 0;
+            }
+            for (; _position < offset; _position += 1) {
+                step(_settings);
+            }
+            return;
+        }
+        long state = stateAt(offset);
+        if (_table != null) {
+            _table.setState((int) state);
+        } else {
+            storeState(state);
+        }
+        _position = offset;
+    }
+
+    /** Return the state of my rotors under pawls after OFFSET key presses
+     *  from the settings of the last setRotors, which must be packable. */
+    private long stateAt(long offset) {
+        Odometer odometer = odometer();
+        if (odometer.closedForm()) {
+            int[] settings = _start.clone();
+            odometer.jump(settings, offset);
+            return odometer.pack(settings);
+        } else if (_orbit != null) {
+            return _orbit.stateAt(offset);
+        } else if (offset >= _position
+                   && offset - _position < odometer.states()) {
+            return odometer.step(currentState(), offset - _position);
+        } else if (offset < odometer.states()) {
+            return odometer.step(odometer.pack(_start), offset);
+        } else {
+            _orbit = odometer.new Orbit(odometer.pack(_start));
+            return _orbit.stateAt(offset);
+        }
+    }
+
+    /** Return the current settings of my rotors, in the form taken by
+     *  setRotors. */
+    String rotorSettings() {
+        if (_table != null) {
+            storeState(_table.state());
+        }
+        StringBuilder result = new StringBuilder(_numRotors - 1);
+        for (int i = 1; i < _numRotors; i += 1) {
+            result.append(_alphabet.toChar(_settings[i]));
+        }
+        return result.toString();
+    }
+
+    /** Return the number of characters converted since the last
+     *  setRotors (or insertRotors), counting skipped ones. */
+    long position() {
+        return _position;
+    }
+
+    /** Return the stepping of my current rotors. */
+    private Odometer odometer() {
+        if (_odometer == null) {
+            boolean[][] notches = new boolean[_pawls][_size];
+            for (int j = 0; j < _pawls; j += 1) {
+                for (int k = 0; k < _size; k += 1) {
+                    notches[j][k] = atNotch(_numRotors - _pawls + j, k);
+                }
+            }
+            _odometer = new Odometer(_size, notches);
+        }
+        return _odometer;
+    }
+
+    /** Return the settings of my rotors under pawls as a state number. */
+    private long currentState() {
+        return _table != null ? _table.state() : loadState();
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
-
-     *  the machine. */
+     *  the machine.  Unless a StateTable serves it, the conversion is
+     *  specialized to the current settings of all but the rightmost
+     *  rotor: while only that rotor moves, the path from its exit to its
+     *  re-entry is one fixed table (_paths), so each character costs a
+     *  few lookups whatever the number of rotors, and the table is
+     *  refilled, from the leftmost rotor that moved, only when another
+     *  rotor moves. */
     int convert(int c) {
-        doubleStepping();
-        c = c % _alphabet.size();
-        if (_plugboard != null) {
-            c = _plugboard.permute(c);
+        if (c >= _size) {
+            c = c % _size;
+        }
+        _position += 1;
+        checkTable();
+        if (_table != null) {
+            return _table.convert(c);
         }
+        if (_pawls == 0) {
+            return substitute(c, _settings);
+        }
+        int size = _size, last = _numRotors - 1;
+        checkPaths();
+        int s = _settings[last];
+        if (_held || atNotch(last, s)) {
+            step(_settings);
+            checkPaths();
+            s = _settings[last];
+        } else {
+            s = _settings[last] = s + 1 == size ? 0 : s + 1;
+        }
+        c = _forward[last][_plug[c] + s] - s;
+        c = _paths[last - 1][c < 0 ? c + size : c];
+        c = _inverse[last][c + s] - s;
+        return _plug[c < 0 ? c + size : c];
+    }
 
-        for (int i = _rotorsArray.size() - 1; i >= 0; i -= 1) {
-            c = _rotorsArray.get(i).convertForward(c);
+    /** Bring _paths up to date with the current settings of all my
+     *  rotors but the rightmost, refilling only the levels from the
+     *  leftmost rotor whose setting has changed since they were filled,
+     *  and recompute _held. */
+    private void checkPaths() {
+        int last = _numRotors - 1, from = 0;
+        if (_paths == null) {
+            _paths = new int[last][_size];
+            _pathSettings = new int[last];
+        } else {
+            while (from < last && _settings[from] == _pathSettings[from]) {
+                from += 1;
+            }
+            if (from == last) {
+                return;
+            }
         }
-        for (int j = 1; j < _rotorsArray.size(); j += 1) {
-            c = _rotorsArray.get(j).convertBackward(c);
+        fillPaths(_paths, from);
+        System.arraycopy(_settings, 0, _pathSettings, 0, last);
+        _held = heldAtNotch();
+    }
+
+    /** Return the conversion of C through the plugboard and rotors, with
+     *  rotor i at setting SETTINGS[i], without advancing.  The rotor
+     *  tables are doubled, so that C plus a setting needs no wrapping. */
+    private int substitute(int c, int[] settings) {
+        return _plug[scramble(_plug[c], settings)];
+    }
+
+    /** Return the conversion of C through the rotors alone, with rotor i
+     *  at setting SETTINGS[i]. */
+    private int scramble(int c, int[] settings) {
+        for (int i = _numRotors - 1; i >= 0; i -= 1) {
+            int s = settings[i];
+            c = _forward[i][c + s] - s;
+            if (c < 0) {
+                c += _size;
+            }
         }
-        if (_plugboard != null) {
-            c = _plugboard.permute(c);
+        for (int i = 1; i < _numRotors; i += 1) {
+            int s = settings[i];
+            c = _inverse[i][c + s] - s;
+            if (c < 0) {
+                c += _size;
+            }
         }
         return c;
     }
 
-    /** Helper method for convert which handles advance. */
-    private void doubleStepping() {
-        boolean[] canRotate = new boolean[_rotorsArray.size()];
+    /** Fill TABLES[k][c] with the conversion of character index C by my
+     *  rotors alone, leaving out the plugboard, when it is character
+     *  #FIRST + k of a message begun at the settings of the last
+     *  setRotors.  Each TABLES[k] has an entry for every character.  My
+     *  own state does not change. */
+    void scramblers(long first, int[][] tables) {
+        int[] settings = _settings.clone();
+        System.arraycopy(_start, 0, settings, _numRotors - _pawls, _pawls);
+        for (long k = 0; k < first; k += 1) {
+            step(settings);
+        }
+        for (int[] table : tables) {
+            step(settings);
+            for (int c = 0; c < _size; c += 1) {
+                table[c] = scramble(c, settings);
+            }
+        }
+    }
 
-        for (int i = _numRotors - _pawls; i < _numRotors; i += 1) {
-            if (i == _rotorsArray.size() - 1) {
-                canRotate[_rotorsArray.size() - 1] = true;
-            }
-            if (_rotorsArray.get(i).rotates()) {
-                if (_rotorsArray.get(i).atNotch()) {
-                    canRotate[i] = true;
-                    if (_rotorsArray.get(i - 1).rotates()) {
-                        canRotate[i - 1] = true;
-                    }
-                }
+    /** Return true iff the rotor in slot I rotates and would be at a notch
+     *  in setting K. */
+    private boolean atNotch(int i, int k) {
+        return (_notches[i][k >>> LOG_LONG_SIZE] & (1L << k)) != 0;
+    }
+
+    /** Advance SETTINGS, the settings of my rotor slots, by one key
+     *  press.  The rightmost rotor always advances; a rotor under a pawl
+     *  at a notch advances together with the rotor to its left, if that
+     *  one rotates. */
+    private void step(int[] settings) {
+        boolean carry = true;
+        for (int i = _numRotors - 1; i >= _numRotors - _pawls; i -= 1) {
+            int k = settings[i];
+            boolean notch = atNotch(i, k);
+            if ((carry || notch) && _rotates[i]) {
+                settings[i] = k + 1 == _size ? 0 : k + 1;
             }
+            carry = notch;
         }
-        for (int j = 0; j < _rotorsArray.size(); j += 1) {
-            if (canRotate[j]) {
-                _rotorsArray.get(j).advance();
+    }
+
+    /** Build my StateTable if the compiled mode is on and the table is
+     *  out of date. */
+    private void checkTable() {
+        if (_budget > 0 && !_tableChecked) {
+            _table = compile();
+            _tableChecked = true;
+        }
+    }
+
+    /** Return a StateTable for my current rotors and plugboard, starting
+     *  in their current state, or null if it would exceed _budget.  A
+     *  table covers every setting of the rotors under pawls, so I keep
+     *  as many of the tables built as fit in _budget, most recently used
+     *  first, and reuse one whenever the rotors, the settings of those
+     *  not under pawls, and the plugboard are as they were for it. */
+    private StateTable compile() {
+        int size = _size;
+        long states = 1;
+        for (int i = 0; i < _pawls; i += 1) {
+            states *= size;
+            if (states * size > Integer.MAX_VALUE) {
+                return null;
+            }
+        }
+        if (StateTable.bytesNeeded(states, size) > _budget) {
+            return null;
+        }
+        int start = (int) loadState();
+        int[] key = tableKey();
+        for (int k = 0; k < _compiled.size(); k += 1) {
+            Compiled table = _compiled.get(k);
+            if (Arrays.equals(key, table._key)
+                    && Arrays.equals(_plug, table._plug)) {
+                _compiled.add(0, _compiled.remove(k));
+                return new StateTable(size, table._next, table._subst,
+                                      start);
             }
         }
+        int[] next = new int[(int) states];
+        char[] subst = new char[(int) states * size];
+        for (int s = 0; s < states; s += 1) {
+            storeState(s);
+            for (int c = 0; c < size; c += 1) {
+                subst[s * size + c] = (char) substitute(c, _settings);
+            }
+            step(_settings);
+            next[s] = (int) loadState();
+        }
+        storeState(start);
+        long bytes = StateTable.bytesNeeded(states, size);
+        while (!_compiled.isEmpty()
+               && bytes * (_compiled.size() + 1) > _budget) {
+            _compiled.remove(_compiled.size() - 1);
+        }
+        _compiled.add(0, new Compiled(key, _plug, next, subst));
+        return new StateTable(size, next, subst, start);
+    }
 
+    /** Return what, besides the plugboard, a StateTable depends on: the
+     *  rotor in each slot, then the settings of the slots not under
+     *  pawls. */
+    private int[] tableKey() {
+        int fixed = _numRotors - _pawls;
+        int[] key = Arrays.copyOf(_chosen, _numRotors + fixed);
+        System.arraycopy(_settings, 0, key, _numRotors, fixed);
+        return key;
+    }
+
+    /** Return the settings of my rotors under pawls as a state number,
+     *  as used by StateTable and Odometer. */
+    private long loadState() {
+        long state = 0;
+        for (int i = _numRotors - _pawls; i < _numRotors; i += 1) {
+            state = state * _size + _settings[i];
+        }
+        return state;
+    }
+
+    /** Set my rotors under pawls to state number STATE. */
+    private void storeState(long state) {
+        for (int i = _numRotors - 1; i >= _numRotors - _pawls; i -= 1) {
+            _settings[i] = (int) (state % _size);
+            state /= _size;
+        }
+    }
+
+    /** Forget my StateTable, if any, after copying its state back into
+     *  the rotors. */
+    private void discardTable() {
+        if (_table != null) {
+            storeState(_table.state());
+        }
+        _table = null;
+        _tableChecked = false;
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String message = "";
+        char[] message = new char[msg.length()];
         for (int i = 0; i < msg.length(); i += 1) {
             int c = convert(_alphabet.toInt(msg.charAt(i)));
-            message += _alphabet.toChar(c);
+            message[i] = _alphabet.toChar(c);
+        }
+        return new String(message);
+    }
+
+    /** Convert characters from IN into OUT, updating the state of the
+     *  rotors accordingly, until IN is exhausted or OUT is full. */
+    void convert(CharBuffer in, CharBuffer out) {
+        while (in.hasRemaining() && out.hasRemaining()) {
+            int c = convert(_alphabet.toInt(in.get()));
+            out.put(_alphabet.toChar(c));
+        }
+    }
+
+    /** Convert in place the LEN bytes of BUF starting at BUF[OFF], each
+     *  taken as the index of a character, updating the state of the
+     *  rotors accordingly.  My alphabet must be the byte alphabet.
+     *  As in convert(int), each byte costs a few lookups whatever the
+     *  number of rotors. */
+    void convert(byte[] buf, int off, int len) {
+        if (!_alphabet.isBytes()) {
+            throw new EnigmaException("Not a byte alphabet.");
+        }
+        if (off < 0 || len < 0 || len > buf.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (_pawls == 0) {
+            for (int k = off; k < off + len; k += 1) {
+                buf[k] = (byte) convert(buf[k] & BYTE_MASK);
+            }
+            return;
+        }
+        discardTable();
+        checkPaths();
+        int size = _size, last = _numRotors - 1;
+        int[] settings = _settings, plug = _plug, inner = _paths[last - 1];
+        int[] forward = _forward[last], inverse = _inverse[last];
+        long[] notches = _notches[last];
+        for (int k = off; k < off + len; k += 1) {
+            int s = settings[last];
+            if (_held || (notches[s >>> LOG_LONG_SIZE] & (1L << s)) != 0) {
+                step(settings);
+                checkPaths();
+                s = settings[last];
+            } else {
+                s = settings[last] = s + 1 == size ? 0 : s + 1;
+            }
+            int c = forward[plug[buf[k] & BYTE_MASK] + s] - s;
+            c = inner[c < 0 ? c + size : c];
+            c = inverse[c + s] - s;
+            buf[k] = (byte) plug[c < 0 ? c + size : c];
+        }
+        _position += len;
+    }
+
+    /** Convert in place the bytes of BUF from its position to its limit,
+     *  as for convert(byte[], int, int), leaving its position at its
+     *  limit. */
+    void convert(ByteBuffer buf) {
+        if (buf.hasArray()) {
+            convert(buf.array(), buf.arrayOffset() + buf.position(),
+                    buf.remaining());
+            buf.position(buf.limit());
+            return;
+        }
+        byte[] block = new byte[Math.min(CHUNK, buf.remaining())];
+        while (buf.hasRemaining()) {
+            int n = Math.min(block.length, buf.remaining());
+            int start = buf.position();
+            buf.get(block, 0, n);
+            convert(block, 0, n);
+            buf.position(start);
+            buf.put(block, 0, n);
+        }
+    }
+
+    /** Fill PATHS[j], for each j >= FROM, with the conversion of each
+     *  character index by my rotors in slots 0 to j alone, at their
+     *  current settings: in through slot j, to the reflector and back out
+     *  through slot j.  PATHS[j - 1] must already be filled for j > 0. */
+    private void fillPaths(int[][] paths, int from) {
+        for (int j = from; j < paths.length; j += 1) {
+            int s = _settings[j];
+            int[] forward = _forward[j], inverse = _inverse[j], path = paths[j];
+            for (int c = 0; c < _size; c += 1) {
+                int x = forward[c + s] - s;
+                if (x < 0) {
+                    x += _size;
+                }
+                if (j > 0) {
+                    x = paths[j - 1][x];
+                    x = inverse[x + s] - s;
+                    if (x < 0) {
+                        x += _size;
+                    }
+                }
+                path[c] = x;
+            }
+        }
+    }
+
+    /** Return true iff a rotor under a pawl, other than the rightmost, is
+     *  at a notch, so that the next key press moves more than the
+     *  rightmost rotor. */
+    private boolean heldAtNotch() {
+        for (int i = _numRotors - _pawls; i < _numRotors - 1; i += 1) {
+            if (atNotch(i, _settings[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the encoding/decoding of MSG, exactly as convert(String)
+     *  would return it and leaving the rotors in the same state, but
+     *  splitting MSG into chunks converted in parallel on the common
+     *  ForkJoinPool. */
+    String convertParallel(CharSequence msg) {
+        return convertParallel(msg, ForkJoinPool.commonPool());
+    }
+
+    /** As for convertParallel(MSG), but running on POOL. */
+    String convertParallel(CharSequence msg, ForkJoinPool pool) {
+        int n = msg.length();
+        Odometer odometer = odometer();
+        if (n <= CHUNK || odometer.states() < 0) {
+            return convert(msg.toString());
         }
-        return message;
+        checkTable();
+        long first = _position;
+        if (_orbit == null && !odometer.closedForm()
+                && n >= odometer.states()) {
+            _orbit = odometer.new Orbit(odometer.pack(_start));
+        }
+        long[] starts = new long[(n + CHUNK - 1) / CHUNK];
+        starts[0] = currentState();
+        for (int k = 1; k < starts.length; k += 1) {
+            starts[k] = odometer.closedForm() || _orbit != null
+                ? stateAt(first + (long) k * CHUNK)
+                : odometer.step(starts[k - 1], CHUNK);
+        }
+        int[] settings = _settings.clone();
+        char[] result = new char[n];
+        pool.invoke(new ConvertTask(msg, result, starts, settings,
+                                    0, starts.length));
+        setStateAt(first + n);
+        return new String(result);
     }
 
+    /** Converts a run of chunks of a message for convertParallel. */
+    private class ConvertTask extends RecursiveAction {
+
+        /** A task converting chunks #FROM to #TO (exclusive) of MSG
+         *  into RESULT, where chunk #k starts in state STARTS[k] and
+         *  SETTINGS gives the settings of the rotors not under pawls. */
+        ConvertTask(CharSequence msg, char[] result, long[] starts,
+                    int[] settings, int from, int to) {
+            _msg = msg;
+            _result = result;
+            _starts = starts;
+            _settings = settings;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > 1) {
+                int mid = (_from + _to) >>> 1;
+                invokeAll(new ConvertTask(_msg, _result, _starts,
+                                          _settings, _from, mid),
+                          new ConvertTask(_msg, _result, _starts,
+                                          _settings, mid, _to));
+                return;
+            }
+            int start = _from * CHUNK;
+            int end = Math.min(start + CHUNK, _msg.length());
+            long state = _starts[_from];
+            if (_table != null) {
+                int s = (int) state;
+                for (int i = start; i < end; i += 1) {
+                    s = _table.next(s);
+                    int c = _alphabet.toInt(_msg.charAt(i));
+                    _result[i] = _alphabet.toChar(_table.substitute(s, c));
+                }
+                return;
+            }
+            Odometer odometer = odometer();
+            int[] settings = _settings.clone();
+            for (int j = 0; j < _pawls; j += 1) {
+                settings[_numRotors - _pawls + j] = odometer.setting(state, j);
+            }
+            for (int i = start; i < end; i += 1) {
+                step(settings);
+                int c = _alphabet.toInt(_msg.charAt(i));
+                _result[i] = _alphabet.toChar(substitute(c, settings));
+            }
+        }
+
+        /** Message being converted. */
+        private final CharSequence _msg;
+
+        /** Converted message. */
+        private final char[] _result;
+
+        /** Starting state of each chunk. */
+        private final long[] _starts;
+
+        /** Settings of all rotors at the start of the message. */
+        private final int[] _settings;
+
+        /** First chunk to convert. */
+        private final int _from;
+
+        /** Chunk after the last to convert. */
+        private final int _to;
+    }
+
+    /** Number of characters in each chunk converted by convertParallel. */
+    static final int CHUNK = 1 << 16;
+
+    /** Mask taking a byte to its unsigned value. */
+    private static final int BYTE_MASK = 0xff;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -183,16 +837,76 @@ class Machine {
     /** Number of pawls. */
     private int _pawls;
 
-    /** Object of allRotors. */
-    private Object[] _allRotors;
+    /** Configuration supplying my rotors. */
+    private final Configuration _config;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Current setting of the rotor in each slot. */
+    private final int[] _settings;
+
+    /** _forward[i][k] is the permutation of rotor i applied to k mod
+     *  the alphabet size, for 0 <= k < 2 * size. */
+    private final int[][] _forward;
+
+    /** Inverses of _forward, laid out likewise. */
+    private final int[][] _inverse;
+
+    /** Bit k of _notches[i] is set iff rotor i rotates and has a notch
+     *  at setting k. */
+    private final long[][] _notches;
+
+    /** _rotates[i] is true iff rotor i rotates. */
+    private final boolean[] _rotates;
+
+    /** _reflecting[i] is true iff rotor i is a reflector. */
+    private final boolean[] _reflecting;
+
+    /** Numbers in my configuration of the rotors being inserted. */
+    private final int[] _chosen;
+
+    /** log2 of the number of bits in a long. */
+    private static final int LOG_LONG_SIZE = 6;
+
+    /** Plugboard as a table, identity when there is no plugboard. */
+    private int[] _plug;
+
+    /** Bytes that the StateTables I keep may take; 0 if none. */
+    private long _budget;
+
+    /** _paths[j][c] is the conversion of c by my rotors in slots 0 to j
+     *  alone, at the settings in _pathSettings; null when out of date
+     *  with my choice of rotors. */
+    private int[][] _paths;
+
+    /** Settings of the rotors in slots 0 to numRotors() - 2 for which
+     *  _paths was filled. */
+    private int[] _pathSettings;
+
+    /** True iff, at _pathSettings, a rotor under a pawl other than the
+     *  rightmost is at a notch. */
+    private boolean _held;
+
+    /** Table serving convert, or null. */
+    private StateTable _table;
+
+    /** True iff _table is up to date with my rotors and plugboard. */
+    private boolean _tableChecked;
+
+    /** Contents of the StateTables built, most recently used first. */
+    private final ArrayList<Compiled> _compiled = new ArrayList<>();
+
+    /** Stepping of my current rotors, or null if not yet needed. */
+    private Odometer _odometer;
 
-    /** Array of rotors' names and rotors. */
-    private ArrayList<Rotor> _rotorsArray;
+    /** Orbit of _start, or null if not yet needed. */
+    private Odometer.Orbit _orbit;
 
-    /** Permutation of plugboard. */
-    private Permutation _plugboard;
+    /** Settings given to setRotors for my rotors under pawls. */
+    private final int[] _start;
 
-    /** name of rotors. */
-    private ArrayList<String> _name;
+    /** Number of key presses since those settings. */
+    private long _position;
 
 }
@@ -0,0 +1,479 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Yulan Rong
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a 5-slot, 3-pawl machine holding the naval rotors of
+     *  NAVALA, with the usual notches. */
+    static Machine navalMachine() {
+        return navalConfiguration().newMachine();
+    }
+
+    /** Return a 5-slot, 3-pawl configuration of the naval rotors of
+     *  NAVALA, with the usual notches. */
+    static Configuration navalConfiguration() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] moving = {"I", "II", "III", "IV", "V", "VI", "VII", "VIII"};
+        String[] notches = {"Q", "E", "V", "J", "Z", "ZM", "ZM", "ZM"};
+        for (int i = 0; i < moving.length; i += 1) {
+            rotors.add(new MovingRotor(moving[i],
+                    new Permutation(NAVALA.get(moving[i]), UPPER),
+                    notches[i]));
+        }
+        rotors.add(new FixedRotor("Beta",
+                new Permutation(NAVALA.get("Beta"), UPPER)));
+        rotors.add(new FixedRotor("Gamma",
+                new Permutation(NAVALA.get("Gamma"), UPPER)));
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        rotors.add(new Reflector("C", new Permutation(NAVALA.get("C"), UPPER)));
+        return new Configuration(UPPER, 5, 3, rotors);
+    }
+
+    /** Set M up as "* B BETA III IV I SETTING (HQ) (EX) (IP) (TR) (BY)". */
+    static void setUp(Machine m, String setting) {
+        m.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        m.setRotors(setting);
+        m.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER));
+    }
+
+    /** Return a random string of N upper-case letters. */
+    static String randomMessage(int n, long seed) {
+        Random random = new Random(seed);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            result.append(UPPER_STRING.charAt(random.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    /** Return the conversion of MSG by M, one character at a time. */
+    static String convertEach(Machine m, String msg) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < msg.length(); i += 1) {
+            result.append(UPPER.toChar(m.convert(UPPER.toInt(msg.charAt(i)))));
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkHiawatha() {
+        Machine m = navalMachine();
+        setUp(m, "AXLE");
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                m.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void checkFailedInsertKeepsRotors() {
+        Machine m = navalMachine();
+        setUp(m, "AXLE");
+        String[][] bad = {
+            {"B", "Beta", "III", "III", "I"},
+            {"Beta", "B", "III", "IV", "I"},
+            {"B", "Beta", "III", "IV"},
+        };
+        for (String[] rotors : bad) {
+            try {
+                m.insertRotors(rotors);
+                fail("accepted " + String.join(" ", rotors));
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+        assertEquals("AXLE", m.rotorSettings());
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                m.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void checkCompiledMatchesRotors() {
+        String msg = randomMessage(20000, 1);
+        Machine plain = navalMachine();
+        setUp(plain, "AXLE");
+        Machine compiled = navalMachine();
+        compiled.setCompiledBudget(1 << 20);
+        setUp(compiled, "AXLE");
+        assertEquals(plain.convert(msg), compiled.convert(msg));
+        assertTrue(compiled.compiled());
+        compiled.setPlugboard(new Permutation("", UPPER));
+        plain.setPlugboard(new Permutation("", UPPER));
+        assertEquals(plain.convert(msg), compiled.convert(msg));
+    }
+
+    @Test
+    public void checkCompiledAcrossSettings() {
+        String msg = randomMessage(3000, 6);
+        String[][] keys = {
+            {"B Beta III IV I", "AXLE", "(HQ) (EX)"},
+            {"B Beta III IV I", "QZZA", "(HQ) (EX)"},
+            {"B Beta III IV I", "ZZZZ", "(HQ) (EX)"},
+            {"B Beta III IV I", "QZZA", "(HQ) (EY)"},
+            {"B Gamma III IV I", "QZZA", "(HQ) (EY)"},
+            {"C Gamma III IV I", "QZZA", "(HQ) (EY)"},
+            {"C Gamma III V I", "QZZA", "(HQ) (EY)"},
+            {"C Gamma III V I", "AZZA", "(HQ) (EY)"},
+        };
+        Machine plain = navalMachine();
+        Machine compiled = navalMachine();
+        compiled.setCompiledBudget(1 << 24);
+        for (String[] key : keys) {
+            for (Machine m : new Machine[] {plain, compiled}) {
+                m.insertRotors(key[0].split(" "));
+                m.setRotors(key[1]);
+                m.setPlugboard(new Permutation(key[2], UPPER));
+            }
+            assertEquals(String.join(" ", key), plain.convert(msg),
+                         compiled.convert(msg));
+            assertTrue(compiled.compiled());
+        }
+    }
+
+    @Test
+    public void checkCompiledOverBudget() {
+        Machine m = navalMachine();
+        m.setCompiledBudget(1000);
+        setUp(m, "AXLE");
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                m.convert("FROMHISSHOULDERHIAWATHA"));
+        assertFalse(m.compiled());
+    }
+
+    @Test
+    public void checkSetStateAt() {
+        String msg = randomMessage(40000, 2);
+        Machine m = navalMachine();
+        m.insertRotors(new String[] {"C", "Gamma", "VI", "VII", "II"});
+        m.setRotors("AZLE");
+        String full = m.convert(msg);
+        long[] offsets = {0, 1, 17, 675, 5000, 39999, 12, 40000};
+        for (long offset : offsets) {
+            m.setRotors("AZLE");
+            m.setStateAt(offset);
+            int k = (int) offset;
+            assertEquals("offset " + offset,
+                    full.substring(k), m.convert(msg.substring(k)));
+        }
+    }
+
+    @Test
+    public void checkAdvanceBy() {
+        String msg = randomMessage(30000, 3);
+        Machine plain = navalMachine();
+        setUp(plain, "BEQA");
+        String full = plain.convert(msg);
+        Machine m = navalMachine();
+        m.setCompiledBudget(1 << 20);
+        setUp(m, "BEQA");
+        assertEquals(full.substring(0, 10), m.convert(msg.substring(0, 10)));
+        m.advanceBy(25000);
+        assertEquals(25010, m.position());
+        assertEquals(full.substring(25010), m.convert(msg.substring(25010)));
+        m.setStateAt(3);
+        assertEquals(full.substring(3, 20), m.convert(msg.substring(3, 20)));
+    }
+
+    @Test
+    public void checkRotorSettings() {
+        String msg = randomMessage(5000, 4);
+        Machine plain = navalMachine();
+        setUp(plain, "AXLE");
+        assertEquals("AXLE", plain.rotorSettings());
+        plain.convert("A");
+        assertEquals("AXLF", plain.rotorSettings());
+        Machine compiled = navalMachine();
+        compiled.setCompiledBudget(1 << 20);
+        setUp(compiled, "AXLE");
+        compiled.convert("A");
+        plain.convert(msg);
+        compiled.convert(msg);
+        assertTrue(compiled.compiled());
+        assertEquals(plain.rotorSettings(), compiled.rotorSettings());
+    }
+
+    @Test
+    public void checkSpecializedMatchesRotors() {
+        Machine m = navalMachine();
+        m.insertRotors(new String[] {"C", "Gamma", "VI", "II", "VIII"});
+        String[] settings = {"ADEZ", "AZMA", "QQQQ"};
+        int n = 3000;
+        int[][] tables = new int[n][26];
+        for (String setting : settings) {
+            m.setRotors(setting);
+            m.scramblers(0, tables);
+            for (int k = 0; k < n; k += 1) {
+                int c = k * 7 % 26;
+                assertEquals(setting + " at " + k, tables[k][c],
+                             m.convert(c));
+            }
+            m.setStateAt(n / 2);
+            m.scramblers(n / 2, tables);
+            assertEquals(tables[0][5], m.convert(5));
+        }
+    }
+
+    /** Return a 5-slot, 3-pawl configuration on the byte alphabet with
+     *  random rotors, generated from SEED. */
+    static Configuration byteConfiguration(long seed) {
+        Alphabet bytes = Alphabet.bytes();
+        Random random = new Random(seed);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = {"R", "F", "M1", "M2", "M3"};
+        for (String name : names) {
+            int[] forward = new int[bytes.size()];
+            for (int k = 0; k < forward.length; k += 1) {
+                forward[k] = k;
+            }
+            if (name.equals("R")) {
+                for (int k = 0; k < forward.length; k += 2) {
+                    forward[k] = k + 1;
+                    forward[k + 1] = k;
+                }
+            } else {
+                for (int k = forward.length - 1; k > 0; k -= 1) {
+                    int j = random.nextInt(k + 1), t = forward[k];
+                    forward[k] = forward[j];
+                    forward[j] = t;
+                }
+            }
+            Permutation perm = new Permutation(forward, bytes);
+            if (name.equals("R")) {
+                rotors.add(new Reflector(name, perm));
+            } else if (name.equals("F")) {
+                rotors.add(new FixedRotor(name, perm));
+            } else {
+                rotors.add(new MovingRotor(name, perm, "\u0007\u00c8"));
+            }
+        }
+        return new Configuration(bytes, 5, 3, rotors);
+    }
+
+    @Test
+    public void checkByteConvert() {
+        Configuration config = byteConfiguration(5);
+        Machine plain = config.newMachine(), bytes = config.newMachine();
+        String setting = "* R F M1 M2 M3 00c6c5ff (00ff) (4142)";
+        Session.setUp(plain, setting);
+        Session.setUp(bytes, setting);
+        byte[] data = new byte[300000];
+        new Random(6).nextBytes(data);
+        byte[] expected = new byte[data.length];
+        for (int k = 0; k < data.length; k += 1) {
+            expected[k] = (byte) plain.convert(data[k] & 0xff);
+        }
+        byte[] buf = data.clone();
+        bytes.convert(buf, 0, 1000);
+        bytes.convert(ByteBuffer.wrap(buf, 1000, 99000));
+        ByteBuffer direct = ByteBuffer.allocateDirect(200000);
+        direct.put(buf, 100000, 200000).flip();
+        bytes.convert(direct);
+        assertFalse(direct.hasRemaining());
+        direct.flip().get(buf, 100000, 200000);
+        assertArrayEquals(expected, buf);
+        assertEquals(plain.rotorSettings(), bytes.rotorSettings());
+        Session.setUp(bytes, setting);
+        bytes.convert(buf, 0, buf.length);
+        assertArrayEquals(data, buf);
+    }
+
+    @Test
+    public void checkOrbit() {
+        boolean[][] notches = new boolean[3][26];
+        notches[1][4] = notches[2][21] = true;
+        Odometer odometer = new Odometer(26, notches);
+        Odometer.Orbit orbit = odometer.new Orbit(0);
+        assertEquals(26 * 25 * 26, orbit.lambda());
+        for (long n = 0; n < 40000; n += 997) {
+            assertEquals(odometer.step(0, n), orbit.stateAt(n));
+        }
+    }
+
+    @Test
+    public void checkJump() {
+        Random random = new Random(8);
+        for (int trial = 0; trial < 200; trial += 1) {
+            int size = 2 + random.nextInt(9), pawls = 1 + random.nextInt(4);
+            boolean[][] notches = new boolean[pawls][size];
+            for (boolean[] rotor : notches) {
+                for (int k = 0; k < size; k += 1) {
+                    rotor[k] = random.nextInt(3) == 0
+                        && !rotor[(k + size - 1) % size];
+                }
+                if (rotor[0] && rotor[size - 1]) {
+                    rotor[0] = false;
+                }
+            }
+            Odometer odometer = new Odometer(size, notches);
+            assertTrue(odometer.closedForm());
+            int[] start = new int[pawls];
+            for (int j = 0; j < pawls; j += 1) {
+                start[j] = random.nextInt(size);
+            }
+            long state = odometer.pack(start);
+            for (long n = 0; n < 3000; n += 1) {
+                int[] settings = start.clone();
+                odometer.jump(settings, n);
+                assertEquals("trial " + trial + " at " + n, state,
+                             odometer.pack(settings));
+                state = odometer.next(state);
+            }
+        }
+        boolean[][] adjacent = new boolean[2][26];
+        adjacent[1][25] = adjacent[1][0] = true;
+        assertFalse(new Odometer(26, adjacent).closedForm());
+    }
+
+    @Test
+    public void checkConvertParallel() {
+        String msg = randomMessage(5 * Machine.CHUNK + 123, 4);
+        Machine plain = navalMachine();
+        setUp(plain, "QEVZ");
+        String full = convertEach(plain, msg);
+        String tail = convertEach(plain, "HELLOWORLD");
+        for (long budget : new long[] {0, 1 << 20}) {
+            Machine m = navalMachine();
+            m.setCompiledBudget(budget);
+            setUp(m, "QEVZ");
+            assertEquals(full, m.convertParallel(msg));
+            assertEquals(tail, m.convert("HELLOWORLD"));
+        }
+    }
+
+    @Test
+    public void checkConvertBuffers() {
+        Machine m = navalMachine();
+        setUp(m, "AXLE");
+        CharBuffer in = CharBuffer.wrap("FROMHISSHOULDERHIAWATHA");
+        CharBuffer out = CharBuffer.allocate(10);
+        StringBuilder result = new StringBuilder();
+        while (in.hasRemaining()) {
+            m.convert(in, out);
+            out.flip();
+            result.append(out);
+            out.clear();
+        }
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", result.toString());
+    }
+
+    @Test
+    public void checkConvertAllocatesNothing() {
+        ThreadMXBean threads =
+            (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long id = Thread.currentThread().getId();
+        Machine m = navalMachine();
+        setUp(m, "AXLE");
+        int sum = 0;
+        for (int i = 0; i < 100000; i += 1) {
+            sum += m.convert(i % 26);
+        }
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < 1000000; i += 1) {
+            sum += m.convert(i % 26);
+        }
+        long used = threads.getThreadAllocatedBytes(id) - before;
+        assertTrue("convert allocated " + used + " bytes", used < 1024);
+        assertTrue(sum > 0);
+    }
+
+    @Test
+    public void checkSharedConfiguration() throws Exception {
+        Configuration config = navalConfiguration();
+        String[] settings = {"AXLE", "QEVZ", "BEQA", "ZZZZ"};
+        String msg = randomMessage(20000, 6);
+        String[] expected = new String[settings.length];
+        for (int i = 0; i < settings.length; i += 1) {
+            Machine m = navalMachine();
+            setUp(m, settings[i]);
+            expected[i] = m.convert(msg);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            ArrayList<Future<String>> results = new ArrayList<>();
+            for (int k = 0; k < 4 * settings.length; k += 1) {
+                String setting = settings[k % settings.length];
+                results.add(pool.submit(() -> {
+                    Machine m = config.newMachine();
+                    setUp(m, setting);
+                    return m.convert(msg);
+                }));
+            }
+            for (int k = 0; k < results.size(); k += 1) {
+                assertEquals(expected[k % settings.length],
+                             results.get(k).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void checkRotorLookup() {
+        Configuration config = navalConfiguration();
+        for (int r = 0; r < config.numAvailable(); r += 1) {
+            String name = config.rotor(r).name();
+            assertEquals(r, config.find(name));
+            assertEquals(r, config.find(name.toLowerCase()));
+        }
+        assertEquals(-1, config.find("IX"));
+        assertEquals(-1, config.find(""));
+        Machine m = config.newMachine();
+        m.insertRotors(new String[] {"b", "BETA", "iii", "Iv", "i"});
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER));
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     m.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void checkBadRotorsKeepMachineUsable() {
+        Machine m = navalMachine();
+        String[][] bad = {
+            {"B", "Beta", "III", "iii", "I"},
+            {"Beta", "B", "III", "IV", "I"},
+            {"B", "Beta", "III", "IV"},
+            {"B", "Beta", "III", "IV", "I", "II"},
+        };
+        for (String[] rotors : bad) {
+            try {
+                m.insertRotors(rotors);
+                fail("accepted " + String.join(" ", rotors));
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+        setUp(m, "AXLE");
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     m.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+}
@@ -1,13 +1,27 @@
 package enigma;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import java.util.ArrayList;
-import java.util.NoSuchElementException;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Scanner;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static enigma.EnigmaException.*;
 
@@ -24,199 +38,595 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  The options and the other modes that ARGS
+     *  may select are listed in USAGE, which is printed when ARGS is
+     *  empty. */
     public static void main(String... args) {
         try {
             new Main(args).process();
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
+            if (args.length == 0) {
+                System.err.print(USAGE);
+            }
         }
         System.exit(1);
     }
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        while (args.length > 0 && (args[0].equals("--parallel")
+                                   || args[0].equals("--cache")
+                                   || args[0].equals("--checkpoint")
+                                   || args[0].equals("--resume")
+                                   || args[0].equals("--pipeline"))) {
+            if (args[0].equals("--cache")) {
+                _cacheConfig = true;
+                args = Arrays.copyOfRange(args, 1, args.length);
+                continue;
+            }
+            if (args[0].equals("--pipeline")) {
+                if (args.length < 2 || !args[1].matches("[1-9]\\d{0,3}")) {
+                    throw error("--pipeline needs a positive thread count");
+                }
+                _pipeline = Integer.parseInt(args[1]);
+                args = Arrays.copyOfRange(args, 2, args.length);
+                continue;
+            }
+            if (args[0].equals("--checkpoint")) {
+                _checkpoint = true;
+                args = Arrays.copyOfRange(args, 1, args.length);
+                continue;
+            }
+            if (args[0].equals("--resume")) {
+                _checkpoint = true;
+                _resume = true;
+                args = Arrays.copyOfRange(args, 1, args.length);
+                continue;
+            }
+            if (args.length < 2 || !args[1].matches("[1-9]\\d{0,3}")) {
+                throw error("--parallel needs a positive thread count");
+            }
+            _pool = new ForkJoinPool(Integer.parseInt(args[1]));
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            if (args.length != 3) {
+                throw error("usage: --serve ADDRESS CONFIG");
+            }
+            _serveAddress = args[1];
+            openConfig(args[2]);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--bombe")) {
+            if (args.length < 3 || args.length > 4
+                    || !args[1].matches("[^@]+(@\\d{1,9})?")) {
+                throw error("usage: --bombe CRIB[@OFFSET] CONFIG [INPUT]");
+            }
+            _crib = args[1];
+            openConfig(args[2]);
+            _input = args.length > 3 ? getReader(args[3])
+                : new InputStreamReader(System.in);
+            return;
+        }
+        if (args.length > 0 && (args[0].equals("--solve")
+                                || args[0].equals("--quadgrams"))) {
+            if (args.length < 3 || args.length > 4) {
+                throw error("usage: %s TABLE CONFIG [INPUT]", args[0]);
+            }
+            _solve = args[0].equals("--solve");
+            _table = args[1];
+            openConfig(args[2]);
+            _input = args.length > 3 ? getReader(args[3])
+                : new InputStreamReader(System.in);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--catalog")) {
+            if (args.length != 3) {
+                throw error("usage: --catalog INDEX CONFIG");
+            }
+            _catalog = args[1];
+            openConfig(args[2]);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--rejewski")) {
+            if (args.length < 3 || args.length > 4) {
+                throw error("usage: --rejewski INDEX CONFIG [INPUT]");
+            }
+            _catalog = args[1];
+            _rejewski = true;
+            openConfig(args[2]);
+            _input = args.length > 3 ? getReader(args[3])
+                : new InputStreamReader(System.in);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--depth")) {
+            if (args.length < 3 || args.length > 4
+                    || !args[1].matches("[1-9]\\d{0,6}")) {
+                throw error("usage: --depth K CONFIG [INPUT]");
+            }
+            _depth = Integer.parseInt(args[1]);
+            openConfig(args[2]);
+            _input = args.length > 3 ? getReader(args[3])
+                : new InputStreamReader(System.in);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--bytes")) {
+            if (args.length != 5) {
+                throw error("usage: --bytes SETTING CONFIG INPUT OUTPUT");
+            }
+            _setting = args[1];
+            _bytes = true;
+            openConfig(args[2]);
+            if (!new File(args[3]).isFile()) {
+                throw error("could not open %s", args[3]);
+            }
+            _inputName = args[3];
+            _outputName = args[4];
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--range")) {
+            if (args.length != 6 || !args[2].matches("\\d{1,18}")
+                    || !args[3].matches("\\d{1,18}")) {
+                throw error("usage: --range SETTING OFFSET LENGTH CONFIG "
+                            + "INPUT");
+            }
+            _setting = args[1];
+            _rangeStart = Long.parseLong(args[2]);
+            _rangeLength = Long.parseLong(args[3]);
+            openConfig(args[4]);
+            if (!new File(args[5]).isFile()) {
+                throw error("could not open %s", args[5]);
+            }
+            _inputName = args[5];
+            _output = new GroupWriter(
+                    new BufferedWriter(new OutputStreamWriter(System.out)));
+            return;
+        }
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        openConfig(args[0]);
 
-        if (args.length > 1) {
-            _input = getInput(args[1]);
+        if (args.length > 2 && _pool == null && _pipeline == 0) {
+            if (!new File(args[1]).isFile()) {
+                throw error("could not open %s", args[1]);
+            }
+            _inputName = args[1];
+            _outputName = args[2];
+        } else if (args.length > 1) {
+            _input = getReader(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = new InputStreamReader(System.in);
         }
 
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            if (_inputName == null) {
+                _output = new GroupWriter(getOutput(args[2]));
+            }
         } else {
-            _output = System.out;
+            _output = new GroupWriter(
+                    new BufferedWriter(new OutputStreamWriter(System.out)));
+        }
+    }
+
+    /** Use the file named NAME as the configuration file. */
+    private void openConfig(String name) {
+        if (!new File(name).isFile()) {
+            throw error("could not open %s", name);
         }
+        _configName = name;
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Return a Reader reading from the file named NAME. */
+    private Reader getReader(String name) {
         try {
-            return new Scanner(new File(name));
+            return new FileReader(name);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a Writer writing to the file named NAME. */
+    private Writer getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new BufferedWriter(new FileWriter(name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
     /** Configure an Enigma machine from the contents of configuration
-     *  file _config and apply it to the messages in _input, sending the
+     *  file _configName and apply it to the messages in _input, sending the
      *  results to _output. */
     private void process() {
-        Machine M = readConfig();
-        String set = _input.nextLine();
-        if (set.substring(0, 1).equals("*")) {
-            setUp(M, set);
-            while (_input.hasNextLine()) {
-                String next = _input.nextLine();
-                if (next.startsWith("*")) {
-                    setUp(M, next);
-                } else if (next.isEmpty()) {
-                    printMessageLine(next);
-                } else {
-                    next = next.replace(" ", "");
-                    next = M.convert(next);
-                    printMessageLine(next);
+        if (_serveAddress != null) {
+            new Server(readConfig(), _serveAddress).run();
+            return;
+        }
+        if (_crib != null) {
+            searchKeys();
+            return;
+        }
+        if (_table != null) {
+            solveKeys();
+            return;
+        }
+        if (_depth > 0) {
+            findDepths();
+            return;
+        }
+        if (_catalog != null) {
+            catalog();
+            return;
+        }
+        if (_bytes) {
+            processBytes();
+            return;
+        }
+        if (_setting != null) {
+            processRange();
+            return;
+        }
+        Configuration config = readConfig();
+        Machine M = config.newMachine();
+        KeyCache keys = new KeyCache(config, KeyCache.CAPACITY);
+        if (_checkpoint && (_inputName == null || !mappable())) {
+            throw error("--checkpoint and --resume need input and output "
+                        + "files that can be memory-mapped");
+        }
+        if (_inputName != null) {
+            if (mappable()) {
+                MappedSession session =
+                    new MappedSession(M, keys, _inputName, _outputName);
+                if (_checkpoint) {
+                    session.setCheckpoints(
+                            MappedSession.CHECKPOINT_INTERVAL, _resume);
                 }
+                session.process();
+                return;
             }
-        } else {
-            throw new EnigmaException("Not start with setting.");
+            _input = getReader(_inputName);
+            _output = new GroupWriter(getOutput(_outputName));
+        }
+        try {
+            if (_pipeline > 0) {
+                new Pipeline(config, keys, _input, _output, _pipeline)
+                    .process();
+                return;
+            }
+            Session session = new Session(M, _input, _output, _pool, false);
+            session.setKeyCache(keys);
+            session.process();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
         }
     }
 
+    /** Search for the keys under which the ciphertext in _input, less
+     *  any whitespace, may contain the crib _crib, printing each as a
+     *  setting line on the standard output. */
+    private void searchKeys() {
+        Configuration config = readConfig();
+        String[] crib = _crib.split("@");
+        Bombe bombe = new Bombe(config, readText(), crib[0]);
+        if (crib.length > 1) {
+            bombe.setOffset(Integer.parseInt(crib[1]));
+        }
+        ForkJoinPool pool = _pool != null ? _pool : ForkJoinPool.commonPool();
+        for (Bombe.Stop stop : bombe.search(pool)) {
+            System.out.println(stop);
+        }
+    }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
-        try {
-            Collection<Rotor> allRotors = new ArrayList<>();
-            String config = _config.nextLine();
-            if (config.contains("{}|+)(*&^%$#@`~[]=-")) {
-                throw new EnigmaException(
-                        "The configuration file has the wrong format.");
-            }
-            _alphabet = new Alphabet(config);
-            rotors = _config.nextInt();
-            pawls = _config.nextInt();
-            _config.nextLine();
-            while (_config.hasNext()) {
-                allRotors.add(readRotor());
+    /** Search for the key of the ciphertext in _input, less any
+     *  whitespace, printing setting lines for the best keys found on the
+     *  standard output, if _solve; otherwise write the quadgram table of
+     *  the text in _input to the file _table. */
+    private void solveKeys() {
+        Configuration config = readConfig();
+        if (!_solve) {
+            Quadgrams.train(config.alphabet(), readText()).write(_table);
+            return;
+        }
+        Quadgrams table = Quadgrams.load(config.alphabet(), _table);
+        Solver solver = new Solver(config, readText(), table);
+        ForkJoinPool pool = _pool != null ? _pool : ForkJoinPool.commonPool();
+        for (Solver.Solution solution : solver.solve(pool)) {
+            System.out.println(solution);
+        }
+    }
+
+    /** Write the catalog of the configuration to the directory _catalog
+     *  or, if _rejewski, print the setting lines that the catalog in that
+     *  directory lists for the characteristic of the indicators in _input
+     *  on the standard output. */
+    private void catalog() {
+        Configuration config = readConfig();
+        if (!_rejewski) {
+            ForkJoinPool pool =
+                _pool != null ? _pool : ForkJoinPool.commonPool();
+            Catalog.build(config, _catalog, pool);
+            return;
+        }
+        Catalog catalog = new Catalog(config.alphabet(), _catalog);
+        String text = readText();
+        int length = 2 * Catalog.KEY;
+        if (text.length() % length != 0) {
+            throw error("indicators must have %d characters each", length);
+        }
+        List<String> indicators = new ArrayList<>();
+        for (int i = 0; i < text.length(); i += length) {
+            indicators.add(text.substring(i, i + length));
+        }
+        CycleType[] characteristic =
+            Catalog.characteristic(indicators, config.alphabet());
+        for (String setting : catalog.lookup(characteristic)) {
+            System.out.println(setting);
+        }
+    }
+
+    /** Print the _depth pairs of messages, the lines of _input less any
+     *  whitespace, most likely to be in depth on the standard output. */
+    private void findDepths() {
+        Configuration config = readConfig();
+        List<String> messages = new ArrayList<>();
+        try (BufferedReader input = new BufferedReader(_input)) {
+            for (String line = input.readLine(); line != null;
+                 line = input.readLine()) {
+                messages.add(line.replaceAll("\\s", ""));
             }
-            return new Machine(_alphabet, rotors, pawls, allRotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+        Depth depth = new Depth(config.alphabet(), messages);
+        ForkJoinPool pool = _pool != null ? _pool : ForkJoinPool.commonPool();
+        for (Depth.Pair pair : depth.search(_depth, pool)) {
+            System.out.printf("%d %d %d %d %.2f%n", pair.first() + 1,
+                              pair.second() + 1, pair.coincidences(),
+                              pair.overlap(), pair.score());
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
-        try {
-            String rotorNotches;
-            String notches = "";
-            String name = _config.next().toUpperCase();
-            String rotorType = _config.next();
-            while (_config.hasNext("([(]\\S+[)])+")) {
-                notches += _config.next().replaceAll(
-                        "[)][(]", ") (") + " ";
-            }
-            Permutation p = new Permutation(notches, _alphabet);
-            if (rotorType.charAt(0) == 'M') {
-                if (rotorType.length() > 1) {
-                    rotorNotches = rotorType.substring(1);
-                    return new MovingRotor(name, p, rotorNotches);
-                } else {
-                    throw new EnigmaException(
-                            "Moving rotors should have notch.");
-                }
-            } else if (rotorType.charAt(0) == 'N') {
-                if (rotorType.length() == 1) {
-                    return new FixedRotor(name, p);
-                } else {
-                    throw new EnigmaException("Fixed rotors don't have notch.");
-                }
-            } else if (rotorType.charAt(0) == 'R') {
-                if (rotorType.length() == 1) {
-                    return new Reflector(name, p);
-                } else {
-                    throw new EnigmaException("Reflectors don't have notch.");
+    /** Convert characters #_rangeStart to #_rangeStart+_rangeLength-1 of
+     *  the message in file _inputName under setting line _setting,
+     *  mapping only those characters of the file, and print the result
+     *  on _output. */
+    private void processRange() {
+        Machine M = readConfig().newMachine();
+        Session.setUp(M, _setting);
+        M.setStateAt(_rangeStart);
+        char[] converted = new char[Session.BLOCK];
+        try (FileChannel in = FileChannel.open(Paths.get(_inputName),
+                                               StandardOpenOption.READ)) {
+            if (_rangeStart + _rangeLength > in.size()) {
+                throw error("%s holds only %d characters", _inputName,
+                            in.size());
+            }
+            long end = _rangeStart + _rangeLength;
+            for (long base = _rangeStart; base < end;
+                 base += MappedInput.WINDOW) {
+                MappedByteBuffer window =
+                    in.map(FileChannel.MapMode.READ_ONLY, base,
+                           Math.min(MappedInput.WINDOW, end - base));
+                while (window.hasRemaining()) {
+                    int n = Math.min(converted.length, window.remaining());
+                    for (int i = 0; i < n; i += 1) {
+                        char c = (char) (window.get() & 0xff);
+                        if (!_alphabet.contains(c)) {
+                            throw error("character #%d is not in the "
+                                        + "alphabet",
+                                        base + window.position() - 1);
+                        }
+                        converted[i] =
+                            _alphabet.toChar(M.convert(_alphabet.toInt(c)));
+                    }
+                    _output.write(converted, 0, n);
                 }
-            } else {
-                throw new EnigmaException("Rotor type is misnamed.");
-            }
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
-        }
-    }
-
-    /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        String[] newRotors = new String[M.numRotors()];
-        Scanner read = new Scanner(settings);
-        if (settings.substring(0, 1).equals("*")) {
-            read.next();
-            for (int i = 0; i < M.numRotors(); i += 1) {
-                newRotors[i] = read.next();
-            }
-            M.insertRotors(newRotors);
-            String cycles = "";
-            String firstSetting = read.next();
-            if (firstSetting.length() == M.numRotors() - 1) {
-                M.setRotors(firstSetting);
-                while (read.hasNext("[(]\\w+[)]")) {
-                    cycles += read.next() + " ";
+            }
+            _output.endLine();
+            _output.flush();
+        } catch (IOException excp) {
+            throw error("could not map %s", _inputName);
+        }
+    }
+
+    /** Convert every byte of file _inputName under setting line
+     *  _setting, with a configuration whose alphabet is the byte
+     *  alphabet, into file _outputName, mapping both files. */
+    private void processBytes() {
+        Machine M = readConfig().newMachine();
+        if (!_alphabet.isBytes()) {
+            throw error("--bytes needs a configuration whose alphabet is %s",
+                        BYTE_ALPHABET);
+        }
+        Session.setUp(M, _setting);
+        byte[] block = new byte[Machine.CHUNK];
+        try (FileChannel in = FileChannel.open(Paths.get(_inputName),
+                                               StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Paths.get(_outputName),
+                                                StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.CREATE,
+                                   StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            for (long base = 0; base < size; base += MappedInput.WINDOW) {
+                long length = Math.min(MappedInput.WINDOW, size - base);
+                MappedByteBuffer src =
+                    in.map(FileChannel.MapMode.READ_ONLY, base, length);
+                MappedByteBuffer dst =
+                    out.map(FileChannel.MapMode.READ_WRITE, base, length);
+                while (src.hasRemaining()) {
+                    int n = Math.min(block.length, src.remaining());
+                    src.get(block, 0, n);
+                    M.convert(block, 0, n);
+                    dst.put(block, 0, n);
                 }
             }
-            if (read.hasNext()) {
-                throw new EnigmaException("Wrong setting for plugboard.");
-            } else {
-                M.setPlugboard(new Permutation(cycles, _alphabet));
+        } catch (IOException excp) {
+            throw error("could not map %s or %s", _inputName, _outputName);
+        }
+    }
+
+    /** Return the contents of _input, less any whitespace. */
+    private String readText() {
+        StringBuilder text = new StringBuilder();
+        try (Reader input = new BufferedReader(_input)) {
+            for (int c = input.read(); c >= 0; c = input.read()) {
+                if (!Character.isWhitespace(c)) {
+                    text.append((char) c);
+                }
             }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+        return text.toString();
+    }
 
-        } else {
-            throw new EnigmaException("Setting must start with '*'.");
+    /** Return true iff the message files can be processed a byte at a
+     *  time: every character of _alphabet is ASCII and the default
+     *  charset encodes ASCII as itself. */
+    private boolean mappable() {
+        byte[] ascii = new byte[ASCII];
+        for (int i = 0; i < ASCII; i += 1) {
+            ascii[i] = (byte) i;
+        }
+        String decoded = new String(ascii, Charset.defaultCharset());
+        if (decoded.length() != ASCII) {
+            return false;
+        }
+        for (int i = 0; i < ASCII; i += 1) {
+            if (decoded.charAt(i) != i) {
+                return false;
+            }
+        }
+        for (int i = 0; i < _alphabet.size(); i += 1) {
+            if (_alphabet.toChar(i) >= ASCII) {
+                return false;
+            }
         }
+        return true;
+    }
 
+    /** Return the Enigma configuration described by the contents of
+     *  configuration file _configName, taking it from the file's cache, and
+     *  updating the cache if need be, when _cacheConfig. */
+    private Configuration readConfig() {
+        if (!_cacheConfig) {
+            return parseConfig();
+        }
+        ConfigCache cache = new ConfigCache(_configName);
+        Configuration result = cache.load();
+        if (result == null) {
+            result = parseConfig();
+            cache.store(result);
+        }
+        _alphabet = result.alphabet();
+        return result;
     }
 
+    /** Return the Enigma configuration described by the contents of
+     *  configuration file _configName. */
+    private Configuration parseConfig() {
+        String text;
+        try {
+            text = new String(Files.readAllBytes(Paths.get(_configName)));
+        } catch (IOException excp) {
+            throw error("could not open %s", _configName);
+        }
+        Tokenizer config = new Tokenizer(text, 1);
+        Collection<Rotor> allRotors = new ArrayList<>();
+        String chars = config.restOfLine();
+        if (chars.contains("{}|+)(*&^%$#@`~[]=-")) {
+            throw config.error("The configuration file has the wrong format.");
+        }
+        try {
+            _alphabet = chars.trim().equals(BYTE_ALPHABET) ? Alphabet.bytes()
+                : new Alphabet(chars);
+        } catch (EnigmaException excp) {
+            throw config.error(excp);
+        }
+        rotors = config.nextInt("configuration file truncated");
+        pawls = config.nextInt("configuration file truncated");
+        config.restOfLine();
+        while (config.hasNext()) {
+            allRotors.add(readRotor(config));
+        }
+        return new Configuration(_alphabet, rotors, pawls, allRotors);
+    }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        while (msg.length() >= 5) {
-            String sub = msg.substring(0, 5);
-            _output.print(sub + " ");
-            msg = msg.substring(5);
+    /** Return a rotor, reading its description from CONFIG. */
+    private Rotor readRotor(Tokenizer config) {
+        String name = config.next("bad rotor description").toUpperCase();
+        String rotorType = config.next("bad rotor description");
+        char kind = rotorType.charAt(0);
+        if (kind == 'M') {
+            if (rotorType.length() == 1) {
+                throw config.error("Moving rotors should have notch.");
+            }
+        } else if (kind == 'N') {
+            if (rotorType.length() > 1) {
+                throw config.error("Fixed rotors don't have notch.");
+            }
+        } else if (kind == 'R') {
+            if (rotorType.length() > 1) {
+                throw config.error("Reflectors don't have notch.");
+            }
+        } else {
+            throw config.error("Rotor type is misnamed.");
+        }
+        StringBuilder cycles = new StringBuilder();
+        while (config.nextIsCycle(false)) {
+            cycles.append(config.next("bad rotor description")).append(' ');
+        }
+        try {
+            Permutation p = new Permutation(cycles.toString(), _alphabet);
+            if (kind == 'M') {
+                String notches = _alphabet.decode(rotorType.substring(1));
+                return new MovingRotor(name, p, notches);
+            } else if (kind == 'N') {
+                return new FixedRotor(name, p);
+            } else {
+                return new Reflector(name, p);
+            }
+        } catch (EnigmaException excp) {
+            throw config.error(excp);
         }
-        _output.println(msg);
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private Reader _input;
+
+    /** Name of the input file, when it is to be memory-mapped. */
+    private String _inputName;
+
+    /** Name of the output file, when it is to be memory-mapped. */
+    private String _outputName;
+
+    /** Name of the configuration file. */
+    private String _configName;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** True iff the configuration is to be cached in binary form. */
+    private boolean _cacheConfig;
+
+    /** Number of converter threads of a Pipeline, or 0 to convert
+     *  without one. */
+    private int _pipeline;
+
+    /** True iff the conversion of mapped files is to be checkpointed. */
+    private boolean _checkpoint;
+
+    /** True iff the conversion of mapped files resumes from its last
+     *  checkpoint, if there is one. */
+    private boolean _resume;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private GroupWriter _output;
 
     /** number of rotors. */
     private int rotors;
@@ -226,4 +636,97 @@ public final class Main {
 
     /** rotors. */
     private String[] _rotors;
+
+    /** Pool converting message lines in parallel, or null. */
+    private ForkJoinPool _pool;
+
+    /** Crib to search for, with its offset if given, or null when not
+     *  running a key search. */
+    private String _crib;
+
+    /** Quadgram table file for --solve or --quadgrams, or null. */
+    private String _table;
+
+    /** True for --solve, false for --quadgrams. */
+    private boolean _solve;
+
+    /** Setting line for --range or --bytes, or null. */
+    private String _setting;
+
+    /** Catalog directory for --catalog or --rejewski, or null. */
+    private String _catalog;
+
+    /** True for --rejewski, false for --catalog. */
+    private boolean _rejewski;
+
+    /** Number of pairs printed by --depth, or 0. */
+    private int _depth;
+
+    /** True iff converting a binary file with --bytes. */
+    private boolean _bytes;
+
+    /** Offset of the first character converted by --range. */
+    private long _rangeStart;
+
+    /** Number of characters converted by --range. */
+    private long _rangeLength;
+
+    /** Address to serve at, or null when not running a Server. */
+    private String _serveAddress;
+
+    /** Alphabet line of a configuration using the byte alphabet. */
+    static final String BYTE_ALPHABET = "*";
+
+    /** Command-line usage, a short block for each mode. */
+    static final String USAGE = String.join(System.lineSeparator(),
+        "usage: [OPTIONS] CONFIG [INPUT [OUTPUT]]",
+        "  Convert the setting lines and messages of INPUT (default: the",
+        "  standard input) into OUTPUT (default: the standard output).",
+        "  With both files named, they are memory-mapped unless --parallel",
+        "  or --pipeline is given or the alphabet is not plain ASCII.",
+        "  OPTIONS, in any order:",
+        "    --parallel N   convert each message line on N threads",
+        "    --pipeline N   read, convert and print in overlapping stages,",
+        "                   converting on N threads",
+        "    --cache        compile CONFIG into a binary cache beside it,",
+        "                   or reuse the cache if CONFIG is unchanged",
+        "    --checkpoint   (mapped files only) record progress beside",
+        "                   OUTPUT, removed once the conversion completes",
+        "    --resume       as --checkpoint, but pick up from the last",
+        "                   checkpoint, if any; the output is as if",
+        "                   uninterrupted",
+        "usage: [OPTIONS] --serve ADDRESS CONFIG",
+        "  Serve CONFIG at ADDRESS, a local TCP port or a Unix socket path.",
+        "usage: [OPTIONS] --bombe CRIB[@OFFSET] CONFIG [INPUT]",
+        "  Print a setting line for each key under which the ciphertext",
+        "  in INPUT may hold CRIB, at character #OFFSET or anywhere.",
+        "usage: [OPTIONS] --solve TABLE CONFIG [INPUT]",
+        "  Print setting lines for the best keys of the ciphertext in",
+        "  INPUT, best first, scoring plaintexts by quadgram table TABLE.",
+        "usage: --quadgrams TABLE CONFIG [INPUT]",
+        "  Write to TABLE the quadgram table of the sample text in INPUT.",
+        "usage: --range SETTING OFFSET LENGTH CONFIG INPUT",
+        "  Print characters #OFFSET to #OFFSET+LENGTH-1 of the bare",
+        "  message in INPUT (a byte per character, no blanks or line",
+        "  breaks), keyed with SETTING, reading only that region.",
+        "usage: --bytes SETTING CONFIG INPUT OUTPUT",
+        "  Convert every byte of INPUT, keyed with SETTING, into OUTPUT.",
+        "  CONFIG must use the byte alphabet (alphabet line "
+            + BYTE_ALPHABET + "),",
+        "  writing each character, here and in SETTING, as two hex digits.",
+        "usage: [OPTIONS] --catalog INDEX CONFIG",
+        "  Write to directory INDEX the catalog of the characteristics",
+        "  of every rotor order and setting of CONFIG, a file per order.",
+        "usage: --rejewski INDEX CONFIG [INPUT]",
+        "  Print the setting lines, without plugboard, that catalog INDEX",
+        "  lists for the day's doubly enciphered message keys in INPUT,",
+        "  six characters each.",
+        "usage: --depth K CONFIG [INPUT]",
+        "  Print the K pairs of the messages in INPUT, one per line,",
+        "  most likely to be in depth, best first: their line numbers,",
+        "  coincidences, common length and score.",
+        "");
+
+    /** Number of ASCII characters. */
+    private static final int ASCII = 128;
 }
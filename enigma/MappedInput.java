@@ -0,0 +1,91 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** Sequential byte access to a file through windows of a memory mapping,
+ *  so that files larger than one MappedByteBuffer can be read.
+ *  @author Yulan Rong
+ */
+class MappedInput {
+
+    /** Size of each mapped window. */
+    static final int WINDOW = 1 << 28;
+
+    /** Input from CHANNEL, starting at its beginning. */
+    MappedInput(FileChannel channel) throws IOException {
+        this(channel, 0);
+    }
+
+    /** Input from CHANNEL, starting at offset START. */
+    MappedInput(FileChannel channel, long start) throws IOException {
+        _channel = channel;
+        _size = channel.size();
+        map(start);
+    }
+
+    /** Return the next byte as a value in 0..255 without consuming it,
+     *  or -1 at the end of the file. */
+    int peek() throws IOException {
+        if (!_window.hasRemaining()) {
+            long next = _base + _window.limit();
+            if (next >= _size) {
+                return -1;
+            }
+            map(next);
+        }
+        return _window.get(_window.position()) & 0xff;
+    }
+
+    /** Consume the byte returned by peek(). */
+    void skip() {
+        _window.position(_window.position() + 1);
+    }
+
+    /** Return the offset in the file of the next byte. */
+    long offset() {
+        return _base + _window.position();
+    }
+
+    /** Consume the line terminator, if any, at the current position. */
+    void skipLineEnd() throws IOException {
+        if (peek() == '\r') {
+            skip();
+        }
+        if (peek() == '\n') {
+            skip();
+        }
+    }
+
+    /** Read and return the rest of the current line as bytes. */
+    byte[] readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int c = peek(); c >= 0 && c != '\n' && c != '\r'; c = peek()) {
+            line.write(c);
+            skip();
+        }
+        skipLineEnd();
+        return line.toByteArray();
+    }
+
+    /** Map the window starting at offset BASE. */
+    private void map(long base) throws IOException {
+        _base = base;
+        _window = _channel.map(FileChannel.MapMode.READ_ONLY, base,
+                               Math.min(WINDOW, _size - base));
+    }
+
+    /** The file read. */
+    private final FileChannel _channel;
+
+    /** Size of the file. */
+    private final long _size;
+
+    /** Offset of _window in the file. */
+    private long _base;
+
+    /** The mapped window. */
+    private MappedByteBuffer _window;
+}
@@ -0,0 +1,88 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** Sequential byte output to a file through windows of a memory mapping.
+ *  The file grows a window at a time and is cut to the bytes actually
+ *  written by close().
+ *  @author Yulan Rong
+ */
+class MappedOutput {
+
+    /** Size of each mapped window. */
+    static final int WINDOW = 1 << 26;
+
+    /** Output to CHANNEL, which must be open for reading and writing,
+     *  replacing its contents. */
+    MappedOutput(FileChannel channel) throws IOException {
+        this(channel, 0);
+    }
+
+    /** Output to CHANNEL, which must be open for reading and writing,
+     *  keeping its first START bytes and replacing the rest. */
+    MappedOutput(FileChannel channel, long start) throws IOException {
+        _channel = channel;
+        map(start);
+    }
+
+    /** Return the offset in the file of the next byte. */
+    long offset() {
+        return _base + _window.position();
+    }
+
+    /** Write the bytes written so far, and the size of the file, to the
+     *  storage device.  Earlier windows were written as they were left
+     *  (see map). */
+    void force() throws IOException {
+        _window.force();
+        _channel.force(true);
+    }
+
+    /** Write the byte B. */
+    void put(byte b) throws IOException {
+        if (!_window.hasRemaining()) {
+            map(_base + WINDOW);
+        }
+        _window.put(b);
+    }
+
+    /** Write the bytes B. */
+    void put(byte[] b) throws IOException {
+        for (byte x : b) {
+            put(x);
+        }
+    }
+
+    /** Cut the file to the bytes written so far. */
+    void close() throws IOException {
+        close(offset());
+    }
+
+    /** Cut the file to its first END bytes, END being at most offset(),
+     *  dropping any written after them. */
+    void close(long end) throws IOException {
+        _channel.truncate(end);
+    }
+
+    /** Map the window starting at offset BASE, first writing any window
+     *  it replaces to the storage device, so that force() need only write
+     *  the current one. */
+    private void map(long base) throws IOException {
+        if (_window != null) {
+            _window.force();
+        }
+        _base = base;
+        _window = _channel.map(FileChannel.MapMode.READ_WRITE, base, WINDOW);
+    }
+
+    /** The file written. */
+    private final FileChannel _channel;
+
+    /** Offset of _window in the file. */
+    private long _base;
+
+    /** The mapped window. */
+    private MappedByteBuffer _window;
+}
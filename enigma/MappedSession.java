@@ -0,0 +1,194 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.error;
+
+/** One file of '*' setting lines and messages, converted as by Session
+ *  into another file, but mapping both files and converting directly
+ *  from one mapping to the other, a byte per character, without
+ *  decoding message lines into characters.  The characters of the
+ *  alphabet must all be ASCII, and the default charset must encode ASCII
+ *  as itself.  As with Session, the lines converted before an error are
+ *  written in full, and nothing of the line with the error.
+ *  @author Yulan Rong
+ */
+class MappedSession {
+
+    /** A session converting the file named INPUT with M into the file
+     *  named OUTPUT.  Setting lines go through KEYS, a cache for M's
+     *  configuration. */
+    MappedSession(Machine M, KeyCache keys, String input, String output) {
+        _machine = M;
+        _keys = keys;
+        _inputName = input;
+        _outputName = output;
+    }
+
+    /** Record the progress of the conversion every INTERVAL input bytes
+     *  in the checkpoint file of my output (see Checkpoint), and, if
+     *  RESUME, pick the conversion up where that file left it, or start
+     *  afresh if there is no such file. */
+    void setCheckpoints(long interval, boolean resume) {
+        if (interval <= 0) {
+            throw error("checkpoint interval must be positive");
+        }
+        _checkpoints = Checkpoint.file(_outputName);
+        _interval = interval;
+        _resume = resume;
+    }
+
+    /** Convert my input into my output.  The checkpoint file, if any, is
+     *  removed once the conversion completes.  On an EnigmaException the
+     *  output is cut to the lines converted in full; on any other failure
+     *  it is left as it is, to be resumed from the last checkpoint. */
+    void process() {
+        Machine M = _machine;
+        Alphabet alphabet = M.configuration().alphabet();
+        int[] toIndex = new int[BYTES];
+        Arrays.fill(toIndex, -1);
+        byte[] toByte = new byte[alphabet.size()];
+        for (int i = 0; i < alphabet.size(); i += 1) {
+            toIndex[alphabet.toChar(i)] = i;
+            toByte[i] = (byte) alphabet.toChar(i);
+        }
+        byte[] newline = System.lineSeparator().getBytes();
+        Path checkpoints = _checkpoints;
+        Checkpoint resumed = _resume && checkpoints.toFile().exists()
+            ? Checkpoint.read(checkpoints) : null;
+        try (FileChannel in = FileChannel.open(Paths.get(_inputName),
+                                               StandardOpenOption.READ);
+             FileChannel out = resumed != null
+                 ? FileChannel.open(Paths.get(_outputName),
+                                    StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE)
+                 : FileChannel.open(Paths.get(_outputName),
+                                    StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            int line = 1, column = 0;
+            String setting = null;
+            MappedInput src;
+            MappedOutput dst;
+            if (resumed != null) {
+                if (resumed.inputSize() != in.size()
+                        || resumed.output() > out.size()
+                        || resumed.lineStart() > resumed.output()) {
+                    throw error("%s does not match %s and %s", checkpoints,
+                                _inputName, _outputName);
+                }
+                setting = resumed.setting();
+                _keys.setUp(M, setting, resumed.line());
+                M.setStateAt(resumed.position());
+                if (!M.rotorSettings().equals(resumed.rotors())) {
+                    throw error("%s does not match the configuration",
+                                checkpoints);
+                }
+                line = resumed.line();
+                column = resumed.column();
+                src = new MappedInput(in, resumed.input());
+                dst = new MappedOutput(out, resumed.output());
+            } else {
+                src = new MappedInput(in);
+                dst = new MappedOutput(out);
+            }
+            long nextCheckpoint = src.offset() + _interval;
+            long lineStart =
+                resumed != null ? resumed.lineStart() : dst.offset();
+            try {
+                if (resumed == null && src.peek() != '*') {
+                    throw new EnigmaException("Not start with setting.");
+                }
+                boolean inMessage = resumed != null;
+                for (int b = src.peek(); b >= 0; b = src.peek(), line += 1) {
+                    if (b == '*' && !inMessage) {
+                        setting = new String(src.readLine());
+                        _keys.setUp(M, setting, line);
+                        continue;
+                    }
+                    if (!inMessage) {
+                        lineStart = dst.offset();
+                    }
+                    for (; b >= 0 && b != '\n' && b != '\r'; b = src.peek()) {
+                        src.skip();
+                        if (b != ' ') {
+                            if (toIndex[b] < 0) {
+                                throw new EnigmaException(
+                                        "character not in the alphabet.");
+                            }
+                            dst.put(toByte[M.convert(toIndex[b])]);
+                            column += 1;
+                            if (column == GroupWriter.GROUP) {
+                                dst.put((byte) ' ');
+                                column = 0;
+                            }
+                        }
+                        if (checkpoints != null
+                                && src.offset() >= nextCheckpoint) {
+                            dst.force();
+                            checkpoint(new Checkpoint(in.size(),
+                                                      src.offset(),
+                                                      dst.offset(),
+                                                      lineStart, line,
+                                                      column, setting,
+                                                      M.position(),
+                                                      M.rotorSettings()));
+                            nextCheckpoint = src.offset() + _interval;
+                        }
+                    }
+                    src.skipLineEnd();
+                    dst.put(newline);
+                    column = 0;
+                    inMessage = false;
+                }
+            } catch (EnigmaException excp) {
+                dst.close(lineStart);
+                throw excp;
+            }
+            dst.close();
+        } catch (IOException excp) {
+            throw error("could not map %s or %s", _inputName, _outputName);
+        }
+        if (checkpoints != null) {
+            checkpoints.toFile().delete();
+        }
+    }
+
+    /** Record C as the latest checkpoint of this conversion. */
+    void checkpoint(Checkpoint c) {
+        c.write(_checkpoints);
+    }
+
+    /** Default number of input bytes converted between checkpoints. */
+    static final long CHECKPOINT_INTERVAL = 1L << 26;
+
+    /** Number of distinct byte values. */
+    private static final int BYTES = 256;
+
+    /** The machine converting messages. */
+    private final Machine _machine;
+
+    /** Cache of keyings for setting lines. */
+    private final KeyCache _keys;
+
+    /** Name of the input file. */
+    private final String _inputName;
+
+    /** Name of the output file. */
+    private final String _outputName;
+
+    /** Checkpoint file, or null if none is kept. */
+    private Path _checkpoints;
+
+    /** Input bytes converted between checkpoints. */
+    private long _interval = CHECKPOINT_INTERVAL;
+
+    /** True iff the conversion resumes from its checkpoint. */
+    private boolean _resume;
+}
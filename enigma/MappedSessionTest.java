@@ -0,0 +1,226 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+
+import static enigma.MachineTest.navalConfiguration;
+import static enigma.MachineTest.randomMessage;
+
+/** The suite of all JUnit tests for the MappedSession class.
+ *  @author Yulan Rong
+ */
+public class MappedSessionTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the output of a Session of CONFIG applied to INPUT, up to
+     *  any error. */
+    private static String session(Configuration config, String input)
+        throws IOException {
+        StringWriter result = new StringWriter();
+        GroupWriter output = new GroupWriter(result);
+        try {
+            new Session(config.newMachine(), new StringReader(input), output,
+                        null, false).process();
+        } catch (EnigmaException excp) {
+            output.flush();
+        }
+        return result.toString();
+    }
+
+    /** Return the contents of the output of a MappedSession of CONFIG
+     *  applied to INPUT, up to any error. */
+    private static String mapped(Configuration config, String input)
+        throws IOException {
+        File in = File.createTempFile("enigma", ".in");
+        File out = File.createTempFile("enigma", ".out");
+        try {
+            Files.write(in.toPath(), input.getBytes());
+            try {
+                new MappedSession(config.newMachine(),
+                                  new KeyCache(config, KeyCache.CAPACITY),
+                                  in.getPath(), out.getPath()).process();
+            } catch (EnigmaException excp) {
+                /* Keep the output written before the error. */
+            }
+            return new String(Files.readAllBytes(out.toPath()));
+        } finally {
+            in.delete();
+            out.delete();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkMatchesSession() throws IOException {
+        Configuration config = navalConfiguration();
+        StringBuilder input = new StringBuilder();
+        for (int k = 0; k < 4; k += 1) {
+            input.append(k % 2 == 0
+                         ? "* B Beta III IV I AXLE (HQ) (EX) (IP)\n"
+                         : "* C Gamma V II VI QMZA (AB)\n");
+            String msg = randomMessage(1000 * k + 13, k);
+            input.append(msg, 0, msg.length() / 2).append("\r\n\n");
+            input.append(msg, msg.length() / 2, msg.length()).append('\n');
+        }
+        String expected = session(config, input.toString());
+        assertEquals(expected, mapped(config, input.toString()));
+    }
+
+    @Test
+    public void checkErrorMatchesSession() throws IOException {
+        Configuration config = navalConfiguration();
+        String input = "* B Beta III IV I AXLE (HQ)\nHELLO WORLD\n"
+            + "ABCDEFGH1JKL\nMORE\n";
+        String expected = session(config, input);
+        assertEquals("UQVGJ ZUKSG " + System.lineSeparator(), expected);
+        assertEquals(expected, mapped(config, input));
+        String noSetting = "HELLO\n";
+        assertEquals(session(config, noSetting), mapped(config, noSetting));
+    }
+
+    /** A MappedSession that fails, as if killed, once it has written
+     *  a given number of checkpoints. */
+    private static class Killed extends MappedSession {
+
+        /** A session as for MappedSession(M, KEYS, INPUT, OUTPUT) that
+         *  stops after its CHECKPOINTSth checkpoint. */
+        Killed(Machine M, KeyCache keys, String input, String output,
+               int checkpoints) {
+            super(M, keys, input, output);
+            _left = checkpoints;
+        }
+
+        @Override
+        void checkpoint(Checkpoint c) {
+            super.checkpoint(c);
+            _left -= 1;
+            if (_left == 0) {
+                throw new IllegalStateException("killed");
+            }
+        }
+
+        /** Checkpoints left before stopping. */
+        private int _left;
+    }
+
+    @Test
+    public void checkResume() throws IOException {
+        Configuration config = navalConfiguration();
+        StringBuilder input = new StringBuilder();
+        for (int k = 0; k < 6; k += 1) {
+            input.append(k % 2 == 0
+                         ? "* B Beta III IV I AXLE (HQ) (EX) (IP)\n"
+                         : "* C Gamma V II VI QMZA (AB)\n");
+            String msg = randomMessage(700 * k + 31, k);
+            input.append(msg, 0, msg.length() / 2).append("\r\n");
+            input.append(msg, msg.length() / 2, msg.length()).append('\n');
+        }
+        File in = File.createTempFile("enigma", ".in");
+        File out = File.createTempFile("enigma", ".out");
+        try {
+            Files.write(in.toPath(), input.toString().getBytes());
+            new MappedSession(config.newMachine(),
+                              new KeyCache(config, KeyCache.CAPACITY),
+                              in.getPath(), out.getPath()).process();
+            byte[] expected = Files.readAllBytes(out.toPath());
+            for (int stop = 1; stop < 40; stop += 7) {
+                MappedSession killed =
+                    new Killed(config.newMachine(),
+                               new KeyCache(config, KeyCache.CAPACITY),
+                               in.getPath(), out.getPath(), stop);
+                killed.setCheckpoints(251, false);
+                try {
+                    killed.process();
+                    fail("conversion was not stopped");
+                } catch (IllegalStateException excp) {
+                    assertTrue(Checkpoint.file(out.getPath()).toFile()
+                               .exists());
+                }
+                MappedSession resumed =
+                    new MappedSession(config.newMachine(),
+                                      new KeyCache(config,
+                                                   KeyCache.CAPACITY),
+                                      in.getPath(), out.getPath());
+                resumed.setCheckpoints(251, true);
+                resumed.process();
+                assertArrayEquals("stopped after " + stop,
+                                  expected, Files.readAllBytes(out.toPath()));
+                assertFalse(Checkpoint.file(out.getPath()).toFile()
+                            .exists());
+            }
+            String bad = "* B Beta III IV I AXLE (HQ)\n"
+                + randomMessage(300, 7) + "\n" + randomMessage(2000, 8)
+                + "1\n";
+            Files.write(in.toPath(), bad.getBytes());
+            expected = mapped(config, bad).getBytes();
+            assertEquals(360 + System.lineSeparator().length(),
+                         expected.length);
+            MappedSession killed =
+                new Killed(config.newMachine(),
+                           new KeyCache(config, KeyCache.CAPACITY),
+                           in.getPath(), out.getPath(), 2);
+            killed.setCheckpoints(500, false);
+            try {
+                killed.process();
+                fail("conversion was not stopped");
+            } catch (IllegalStateException excp) {
+                /* Stopped in mid-line. */
+            }
+            MappedSession resumed =
+                new MappedSession(config.newMachine(),
+                                  new KeyCache(config, KeyCache.CAPACITY),
+                                  in.getPath(), out.getPath());
+            resumed.setCheckpoints(500, true);
+            try {
+                resumed.process();
+                fail("bad character accepted");
+            } catch (EnigmaException excp) {
+                assertArrayEquals(expected, Files.readAllBytes(out.toPath()));
+            }
+        } finally {
+            in.delete();
+            out.delete();
+            Checkpoint.file(out.getPath()).toFile().delete();
+        }
+    }
+
+    @Test
+    public void checkResumeWithoutCheckpoint() throws IOException {
+        Configuration config = navalConfiguration();
+        String input = "* B Beta III IV I AXLE (HQ)\n"
+            + randomMessage(1000, 3) + "\n";
+        File in = File.createTempFile("enigma", ".in");
+        File out = File.createTempFile("enigma", ".out");
+        try {
+            Files.write(in.toPath(), input.getBytes());
+            Files.write(out.toPath(), "stale output".getBytes());
+            MappedSession resumed =
+                new MappedSession(config.newMachine(),
+                                  new KeyCache(config, KeyCache.CAPACITY),
+                                  in.getPath(), out.getPath());
+            resumed.setCheckpoints(100, true);
+            resumed.process();
+            assertEquals(session(config, input),
+                         new String(Files.readAllBytes(out.toPath())));
+            assertFalse(Checkpoint.file(out.getPath()).toFile().exists());
+        } finally {
+            in.delete();
+            out.delete();
+            Checkpoint.file(out.getPath()).toFile().delete();
+        }
+    }
+}
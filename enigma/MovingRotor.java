@@ -13,16 +13,15 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+        _notchAt = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); i += 1) {
+            _notchAt[alphabet().toInt(notches.charAt(i))] = true;
+        }
     }
 
     @Override
-    boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i += 1) {
-            if (this.setting() == alphabet().toInt(_notches.charAt(i))) {
-                return true;
-            }
-        }
-        return false;
+    boolean notchAt(int posn) {
+        return _notchAt[posn];
     }
 
     @Override
@@ -38,4 +37,7 @@ class MovingRotor extends Rotor {
 
     /** String of notches. */
     private String _notches;
+
+    /** _notchAt[k] is true iff setting k is at a notch. */
+    private final boolean[] _notchAt;
 }
@@ -0,0 +1,281 @@
+package enigma;
+
+/** The stepping of the rotors under the pawls of a Machine, taken apart
+ *  from the permutations the rotors implement.  A state packs the
+ *  settings of those rotors into a long in mixed radix, the rightmost
+ *  rotor least significant, as StateTable numbers its states.
+ *  @author Yulan Rong
+ */
+class Odometer {
+
+    /** An odometer for rotors over an alphabet of SIZE characters, where
+     *  NOTCHES[j][k] is true iff the j-th rotor under a pawl (counting from
+     *  the left) is at a notch in setting k. */
+    Odometer(int size, boolean[][] notches) {
+        _size = size;
+        _notches = notches;
+        _place = new long[notches.length];
+        long place = 1;
+        boolean fits = true;
+        for (int j = notches.length - 1; j >= 0; j -= 1) {
+            _place[j] = place;
+            if (place > Long.MAX_VALUE / size) {
+                fits = false;
+            }
+            place *= size;
+        }
+        _states = fits ? place : -1;
+        _notchesBefore = new int[notches.length][size + 1];
+        _free = new int[notches.length][];
+        boolean adjacent = size < 2;
+        for (int j = 0; j < notches.length; j += 1) {
+            int free = 0;
+            for (int k = 0; k < size; k += 1) {
+                _notchesBefore[j][k + 1] =
+                    _notchesBefore[j][k] + (notches[j][k] ? 1 : 0);
+                free += notches[j][k] ? 0 : 1;
+                adjacent |= notches[j][k] && notches[j][(k + 1) % size];
+            }
+            _free[j] = new int[free];
+            for (int k = 0, n = 0; k < size; k += 1) {
+                if (!notches[j][k]) {
+                    _free[j][n] = k;
+                    n += 1;
+                }
+            }
+        }
+        _closedForm = !adjacent;
+    }
+
+    /** Return the number of states, or -1 if they cannot be packed into
+     *  a long. */
+    long states() {
+        return _states;
+    }
+
+    /** Return the number of rotors under pawls. */
+    int pawls() {
+        return _notches.length;
+    }
+
+    /** Return the setting of the J-th rotor in STATE. */
+    int setting(long state, int j) {
+        return (int) (state / _place[j] % _size);
+    }
+
+    /** Return the state in which rotor j has setting SETTINGS[j]. */
+    long pack(int[] settings) {
+        long state = 0;
+        for (int j = 0; j < settings.length; j += 1) {
+            state += settings[j] * _place[j];
+        }
+        return state;
+    }
+
+    /** Return the state following STATE after one key press.  The
+     *  rightmost rotor always advances; a rotor at a notch advances
+     *  together with the rotor to its left. */
+    long next(long state) {
+        long result = state;
+        boolean carry = true;
+        for (int j = _notches.length - 1; j >= 0; j -= 1) {
+            int k = (int) (state / _place[j] % _size);
+            boolean notch = _notches[j][k];
+            if (carry || notch) {
+                result += k == _size - 1 ? -k * _place[j] : _place[j];
+            }
+            carry = notch;
+        }
+        return result;
+    }
+
+    /** Return the state N key presses after START, found by stepping. */
+    long step(long start, long n) {
+        long state = start;
+        for (long i = 0; i < n; i += 1) {
+            state = next(state);
+        }
+        return state;
+    }
+
+    /** Return true iff jump applies: no rotor has notches at two
+     *  adjacent settings, as is true of every historical rotor. */
+    boolean closedForm() {
+        return _closedForm;
+    }
+
+    /** Set SETTINGS, the settings of my rotors from the left, to those N
+     *  key presses later, in time proportional to the square of the
+     *  number of rotors.  Requires closedForm().
+     *
+     *  Since a rotor at a notch always moves on the next key press, and
+     *  (with no adjacent notches) moves off it, each rotor stays at a
+     *  notch for exactly one key press per visit.  Hence the number of
+     *  presses in which rotor j + 1 pushes rotor j is the number of
+     *  notches among the settings rotor j + 1 has passed, and rotor j,
+     *  which otherwise moves only off its own notches, has passed as many
+     *  non-notch settings as it received pushes, less one if a push
+     *  arrived while it was already at a notch, which can happen only at
+     *  the first press.  That fixes how far it has moved, except whether
+     *  it has yet left a notch just reached, which it has unless the push
+     *  that brought it there came in the last press. */
+    void jump(int[] settings, long n) {
+        int last = _notches.length - 1;
+        if (last < 0 || n <= 0) {
+            return;
+        }
+        long[] moves = new long[last + 2];
+        for (int d = 0; d <= last + 1; d += 1) {
+            moves[d] = Math.max(0, n - d);
+        }
+        long[] total = new long[last + 1];
+        total[last] = moves[0];
+        for (int j = last - 1; j >= 0; j -= 1) {
+            int s = settings[j], right = settings[j + 1];
+            boolean startNotch = _notches[j][s];
+            long[] mine = new long[j + 1];
+            for (int d = 0; d <= j; d += 1) {
+                if (n - d <= 0) {
+                    continue;
+                }
+                long pushes = notchesIn(j + 1, right, moves[d])
+                    - (startNotch && _notches[j + 1][right] ? 1 : 0);
+                if (pushes == 0) {
+                    mine[d] = startNotch ? 1 : 0;
+                    continue;
+                }
+                long m = freeOffset(j, s, pushes) + 1;
+                boolean pushedLast =
+                    _notches[j + 1][(int) ((right + moves[d + 1]) % _size)];
+                if (_notches[j][(int) ((s + m) % _size)] && !pushedLast) {
+                    m += 1;
+                }
+                mine[d] = m;
+            }
+            total[j] = mine[0];
+            moves = mine;
+        }
+        for (int j = 0; j <= last; j += 1) {
+            settings[j] = (int) ((settings[j] + total[j]) % _size);
+        }
+    }
+
+    /** Return the number of notches of rotor J among the M settings
+     *  starting at setting S, counting on round the alphabet. */
+    private long notchesIn(int j, int s, long m) {
+        return notchesBefore(j, s + m) - notchesBefore(j, s);
+    }
+
+    /** Return the number of notches of rotor J among settings 0 to X - 1,
+     *  counting on round the alphabet. */
+    private long notchesBefore(int j, long x) {
+        return x / _size * _notchesBefore[j][_size]
+            + _notchesBefore[j][(int) (x % _size)];
+    }
+
+    /** Return how many settings past S the K-th setting of rotor J that
+     *  is not a notch lies, counting S itself as the first, and on round
+     *  the alphabet; K > 0. */
+    private long freeOffset(int j, int s, long k) {
+        int free = _free[j].length;
+        long index = s - _notchesBefore[j][s] + k - 1;
+        return index / free * _size + _free[j][(int) (index % free)] - s;
+    }
+
+    /** Most positions along an orbit that an Orbit remembers. */
+    static final int MAX_CHECKPOINTS = 1 << 16;
+
+    /** The sequence of states reached from a start state.  Since the
+     *  states are finite, the sequence runs through a tail of length
+     *  mu() into a cycle of length lambda(). */
+    class Orbit {
+
+        /** The orbit of START, found with Brent's cycle detection. */
+        Orbit(long start) {
+            long power = 1, lambda = 1;
+            long tortoise = start, hare = next(start);
+            while (tortoise != hare) {
+                if (power == lambda) {
+                    tortoise = hare;
+                    power *= 2;
+                    lambda = 0;
+                }
+                hare = next(hare);
+                lambda += 1;
+            }
+            long mu = 0;
+            tortoise = start;
+            hare = step(start, lambda);
+            while (tortoise != hare) {
+                tortoise = next(tortoise);
+                hare = next(hare);
+                mu += 1;
+            }
+            _mu = mu;
+            _lambda = lambda;
+            long length = mu + lambda;
+            _stride = (int) ((length + MAX_CHECKPOINTS - 1) / MAX_CHECKPOINTS);
+            _checkpoints = new long[(int) ((length + _stride - 1) / _stride)];
+            long state = start;
+            for (long i = 0; i < length; i += 1) {
+                if (i % _stride == 0) {
+                    _checkpoints[(int) (i / _stride)] = state;
+                }
+                state = next(state);
+            }
+        }
+
+        /** Return the length of my tail. */
+        long mu() {
+            return _mu;
+        }
+
+        /** Return the length of my cycle. */
+        long lambda() {
+            return _lambda;
+        }
+
+        /** Return the state OFFSET >= 0 key presses after my start. */
+        long stateAt(long offset) {
+            if (offset >= _mu + _lambda) {
+                offset = _mu + (offset - _mu) % _lambda;
+            }
+            return step(_checkpoints[(int) (offset / _stride)],
+                        offset % _stride);
+        }
+
+        /** Length of the tail. */
+        private final long _mu;
+
+        /** Length of the cycle. */
+        private final long _lambda;
+
+        /** Distance between successive checkpoints. */
+        private final int _stride;
+
+        /** Every _stride-th state of the tail and cycle. */
+        private final long[] _checkpoints;
+    }
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Notch positions of each rotor. */
+    private final boolean[][] _notches;
+
+    /** _place[j] is the weight of rotor j's setting in a state. */
+    private final long[] _place;
+
+    /** Number of states, or -1. */
+    private final long _states;
+
+    /** _notchesBefore[j][k] is the number of notches of rotor j at
+     *  settings below k. */
+    private final int[][] _notchesBefore;
+
+    /** The settings of each rotor that are not notches, in order. */
+    private final int[][] _free;
+
+    /** True iff no rotor has notches at adjacent settings. */
+    private final boolean _closedForm;
+}
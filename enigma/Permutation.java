@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** Represents a permutation of a range of integers starting at 0 corresponding
  *  to the characters of an alphabet.
  *  @author Yulan Rong
@@ -15,21 +17,112 @@ class Permutation {
         _alphabet = alphabet;
         cycles = cycles.trim();
         _cycles = cycles;
-        _arrayCycles = _cycles.split("\\)\\s+\\(");
-        for (int i = 0; i < _arrayCycles.length; i += 1) {
-            _arrayCycles[i] = _arrayCycles[i].replaceAll("[()]", "");
-            _arrayCycles[i].trim();
-            if (_arrayCycles[i].contains(" ")) {
-                throw new EnigmaException(
-                        "White space between cycle is not allowed.");
+        _forward = new int[alphabet.size()];
+        _inverse = new int[alphabet.size()];
+        for (int i = 0; i < _forward.length; i += 1) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
+        int start = -1;
+        for (int i = 0; i < cycles.length(); i += 1) {
+            char c = cycles.charAt(i);
+            if (c == '(') {
+                if (start >= 0) {
+                    throw new EnigmaException("Cycles cannot be nested.");
+                }
+                start = i + 1;
+            } else if (c == ')') {
+                if (start < 0) {
+                    throw new EnigmaException("Unbalanced ')' in cycles.");
+                }
+                addCycle(cycles.substring(start, i));
+                start = -1;
+            } else if (Character.isWhitespace(c)) {
+                if (start >= 0) {
+                    throw new EnigmaException(
+                            "White space between cycle is not allowed.");
+                }
+            } else if (start < 0) {
+                throw new EnigmaException("Characters must be in a cycle.");
+            }
+        }
+        if (start >= 0) {
+            throw new EnigmaException("Unbalanced '(' in cycles.");
+        }
+        _derangement = true;
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (_forward[i] == i) {
+                _derangement = false;
+                break;
+            }
+        }
+    }
+
+    /** Set this Permutation to the one mapping index k of ALPHABET to
+     *  FORWARD[k], for each k.  FORWARD must contain each index of
+     *  ALPHABET exactly once. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        if (forward.length != alphabet.size()) {
+            throw new EnigmaException("Permutation has the wrong size.");
+        }
+        _alphabet = alphabet;
+        _forward = forward.clone();
+        _inverse = new int[forward.length];
+        Arrays.fill(_inverse, -1);
+        _derangement = true;
+        for (int i = 0; i < forward.length; i += 1) {
+            int to = forward[i];
+            if (to < 0 || to >= forward.length || _inverse[to] >= 0) {
+                throw new EnigmaException("Not a permutation.");
+            }
+            _inverse[to] = i;
+            if (to == i) {
+                _derangement = false;
             }
         }
     }
 
+    /** A permutation of ALPHABET with the tables FORWARD and INVERSE,
+     *  which must be inverses of each other and are not copied. */
+    private Permutation(int[] forward, int[] inverse, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _forward = forward;
+        _inverse = inverse;
+        _derangement = true;
+        for (int i = 0; i < forward.length; i += 1) {
+            if (forward[i] == i) {
+                _derangement = false;
+                break;
+            }
+        }
+    }
+
+    /** Return the permutation of my alphabet whose image of each index
+     *  is given by FORWARD, which must be a permutation; FORWARD is not
+     *  copied and must not change afterward. */
+    private Permutation fromTable(int[] forward) {
+        int[] inverse = new int[forward.length];
+        for (int i = 0; i < forward.length; i += 1) {
+            inverse[forward[i]] = i;
+        }
+        return new Permutation(forward, inverse, _alphabet);
+    }
+
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
+     *  c0c1...cm, as written in the notation of my alphabet. */
     private void addCycle(String cycle) {
-        _cycles +=  cycle;
+        cycle = _alphabet.decode(cycle);
+        int n = cycle.length();
+        for (int j = 0; j < n; j += 1) {
+            int from = _alphabet.toInt(cycle.charAt(j));
+            int to = _alphabet.toInt(cycle.charAt((j + 1) % n));
+            if (_forward[from] != from || _inverse[to] != to) {
+                throw new EnigmaException(
+                        "A character may appear in only one cycle.");
+            }
+            _forward[from] = to;
+            _inverse[to] = from;
+        }
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -43,19 +136,19 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        return _alphabet.toInt(permute(_alphabet.toChar(wrap(p))));
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        return _alphabet.toInt(invert(_alphabet.toChar(wrap(c))));
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -64,20 +157,7 @@ class Permutation {
         if (!alphabet().contains(p)) {
             throw new EnigmaException("this character is not on alphabet.");
         }
-        for (int i = 0; i < _arrayCycles.length; i += 1) {
-            if (_arrayCycles[i].length() > 1) {
-                for (int j = 0; j < _arrayCycles[i].length(); j += 1) {
-                    if (j == _arrayCycles[i].indexOf(p)) {
-                        if (j == _arrayCycles[i].length() - 1) {
-                            return _arrayCycles[i].charAt(0);
-                        } else {
-                            return _arrayCycles[i].charAt(j + 1);
-                        }
-                    }
-                }
-            }
-        }
-        return p;
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
@@ -85,21 +165,80 @@ class Permutation {
         if (!alphabet().contains(c)) {
             throw new EnigmaException("this character is not on alphabet.");
         }
-        for (int i = 0; i < _arrayCycles.length; i += 1) {
-            if (_arrayCycles[i].length() > 1) {
-                for (int j = 0; j < _arrayCycles[i].length(); j += 1) {
-                    int last = _arrayCycles[i].length();
-                    if (j == _arrayCycles[i].indexOf(c)) {
-                        if (j == 0) {
-                            return _arrayCycles[i].charAt(last - 1);
-                        } else {
-                            return _arrayCycles[i].charAt(j - 1);
-                        }
-                    }
-                }
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
+    }
+
+    /** Return the permutation that applies me and then OTHER, a
+     *  permutation of the same size: it takes index k to
+     *  OTHER.permute(permute(k)).  This is the order of Rejewski's
+     *  products, in which AD means A followed by D. */
+    Permutation compose(Permutation other) {
+        checkSize(other);
+        int[] forward = new int[size()], inverse = new int[size()];
+        for (int i = 0; i < forward.length; i += 1) {
+            int to = other._forward[_forward[i]];
+            forward[i] = to;
+            inverse[to] = i;
+        }
+        return new Permutation(forward, inverse, _alphabet);
+    }
+
+    /** Return my inverse. */
+    Permutation inverse() {
+        return new Permutation(_inverse, _forward, _alphabet);
+    }
+
+    /** Return the permutation that applies me N times (my inverse -N
+     *  times if N is negative).  Takes time proportional to my size
+     *  whatever N is. */
+    Permutation power(long n) {
+        int size = size();
+        int[] forward = new int[size], cycle = new int[size];
+        boolean[] seen = new boolean[size];
+        for (int start = 0; start < size; start += 1) {
+            if (seen[start]) {
+                continue;
+            }
+            int length = 0;
+            for (int k = start; !seen[k]; k = _forward[k]) {
+                seen[k] = true;
+                cycle[length] = k;
+                length += 1;
             }
+            int shift = (int) Math.floorMod(n, (long) length);
+            for (int j = 0, t = shift; j < length; j += 1) {
+                forward[cycle[j]] = cycle[t];
+                t = t + 1 == length ? 0 : t + 1;
+            }
+        }
+        return fromTable(forward);
+    }
+
+    /** Return my conjugate by Q, a permutation of the same size: the
+     *  permutation taking Q.permute(k) to Q.permute(permute(k)) for each
+     *  index k, whose cycles are mine with each index relabeled by Q.
+     *  It is Q.inverse().compose(this).compose(Q). */
+    Permutation conjugate(Permutation q) {
+        checkSize(q);
+        int[] forward = new int[size()], inverse = new int[size()];
+        for (int i = 0; i < forward.length; i += 1) {
+            int from = q._forward[i], to = q._forward[_forward[i]];
+            forward[from] = to;
+            inverse[to] = from;
+        }
+        return new Permutation(forward, inverse, _alphabet);
+    }
+
+    /** Return my cycle type, which I share exactly with my conjugates. */
+    CycleType cycleType() {
+        return CycleType.of(_forward);
+    }
+
+    /** Throw an exception unless OTHER has my size. */
+    private void checkSize(Permutation other) {
+        if (other.size() != size()) {
+            throw new EnigmaException("Permutations have different sizes.");
         }
-        return c;
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -110,11 +249,7 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        int len = 0;
-        for (int i = 0; i < _arrayCycles.length; i += 1) {
-            len += _arrayCycles[i].length();
-        }
-        return len == alphabet().size();
+        return _derangement;
     }
 
     /** Alphabet of this permutation. */
@@ -123,6 +258,14 @@ class Permutation {
     /** String to store cycles. */
     private String _cycles;
 
-    /** ArrayList of string type of cycles. */
-    private String[] _arrayCycles;
+    /** _forward[i] is the image of index i under this permutation.
+     *  Fixed once I am constructed, so permutations may share it. */
+    private final int[] _forward;
+
+    /** _inverse[i] is the preimage of index i under this permutation.
+     *  Fixed once I am constructed, so permutations may share it. */
+    private final int[] _inverse;
+
+    /** True iff no index maps to itself. */
+    private boolean _derangement;
 }
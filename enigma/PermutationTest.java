@@ -3,6 +3,7 @@ package enigma;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
@@ -127,4 +128,135 @@ public class PermutationTest {
         Permutation p1 = new Permutation("(ABC) (DEF)", new Alphabet("ABCDEF"));
         assertTrue(p1.derangement());
     }
+
+    @Test
+    public void testAdjacentCycles() {
+        perm = new Permutation("(AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)", UPPER);
+        checkPerm("adjacent", UPPER_STRING, "VZBRGITYUPSDNHLXAWMJQOFECK");
+    }
+
+    @Test
+    public void testSingletonNotDerangement() {
+        Permutation p = new Permutation("(ABC) (D)", new Alphabet("ABCD"));
+        assertFalse(p.derangement());
+        assertEquals(3, p.permute(3));
+        assertEquals(1, p.permute(-4));
+        assertEquals(2, p.invert(4));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testRepeatedCharacter() {
+        new Permutation("(AB) (BC)", UPPER);
+    }
+
+    @Test
+    public void testFromTable() {
+        Alphabet abcd = new Alphabet("ABCD");
+        Permutation p = new Permutation(new int[] {1, 2, 0, 3}, abcd);
+        assertEquals('B', p.permute('A'));
+        assertEquals('A', p.invert('B'));
+        assertEquals('D', p.permute('D'));
+        assertFalse(p.derangement());
+        assertTrue(new Permutation(new int[] {1, 0, 3, 2}, abcd)
+                   .derangement());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testFromTableNotPermutation() {
+        new Permutation(new int[] {1, 1, 0, 3}, new Alphabet("ABCD"));
+    }
+
+    @Test
+    public void testByteCycles() {
+        Alphabet bytes = Alphabet.bytes();
+        Permutation p = new Permutation("(00ff41) (0a0B)", bytes);
+        assertEquals(256, p.size());
+        assertEquals(0xff, p.permute(0x00));
+        assertEquals(0x41, p.permute(0xff));
+        assertEquals(0x00, p.permute(0x41));
+        assertEquals(0x0b, p.permute(0x0a));
+        assertEquals(0x42, p.permute(0x42));
+        assertEquals("\u0000\u00ffA", bytes.decode("00Ff41"));
+        assertEquals("(AB)", new Alphabet().decode("(AB)"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testByteCyclesOddDigits() {
+        new Permutation("(00f)", Alphabet.bytes());
+    }
+
+    @Test
+    public void testCompose() {
+        Alphabet alpha = new Alphabet("ABCDE");
+        Permutation a = new Permutation("(AB)(CDE)", alpha);
+        Permutation b = new Permutation("(AC)", alpha);
+        Permutation ab = a.compose(b);
+        for (int k = 0; k < 5; k += 1) {
+            assertEquals(b.permute(a.permute(k)), ab.permute(k));
+            assertEquals(k, ab.invert(ab.permute(k)));
+        }
+        Permutation id = a.compose(a.inverse());
+        for (int k = 0; k < 5; k += 1) {
+            assertEquals(k, id.permute(k));
+        }
+        assertFalse(id.derangement());
+        assertTrue(a.compose(new Permutation("(ABCDE)", alpha).inverse()
+                             .compose(a.inverse())).derangement());
+    }
+
+    @Test
+    public void testPower() {
+        Alphabet alpha = new Alphabet("ABCDEFG");
+        Permutation p = new Permutation("(ABC)(DEFG)", alpha);
+        Permutation q = new Permutation("", alpha);
+        for (int n = 0; n <= 14; n += 1) {
+            Permutation power = p.power(n), back = p.power(-n);
+            for (int k = 0; k < 7; k += 1) {
+                assertEquals(q.permute(k), power.permute(k));
+                assertEquals(k, back.permute(power.permute(k)));
+            }
+            q = q.compose(p);
+        }
+        Permutation big = p.power(1L << 40);
+        Permutation small = p.power((1L << 40) % 12);
+        for (int k = 0; k < 7; k += 1) {
+            assertEquals(small.permute(k), big.permute(k));
+        }
+    }
+
+    @Test
+    public void testConjugate() {
+        Alphabet alpha = new Alphabet("ABCDEF");
+        Permutation p = new Permutation("(ABC)(DE)", alpha);
+        Permutation q = new Permutation("(AD)(BF)", alpha);
+        Permutation c = p.conjugate(q);
+        Permutation expected = q.inverse().compose(p).compose(q);
+        for (int k = 0; k < 6; k += 1) {
+            assertEquals(expected.permute(k), c.permute(k));
+            assertEquals(q.permute(p.permute(k)), c.permute(q.permute(k)));
+        }
+        assertEquals(p.cycleType(), c.cycleType());
+    }
+
+    @Test
+    public void testCycleType() {
+        Alphabet alpha = new Alphabet("ABCDEFG");
+        CycleType t = new Permutation("(AB)(CDE)", alpha).cycleType();
+        assertEquals("3 2 1 1", t.toString());
+        assertArrayEquals(new int[] {3, 2, 1, 1}, t.lengths());
+        assertEquals(4, t.numCycles());
+        assertEquals(7, t.size());
+        assertEquals(t, new Permutation("(GFE)(AC)", alpha).cycleType());
+        assertEquals(t.hashCode(), CycleType.parse(" 1 3 1 2 ").hashCode());
+        assertEquals(t, CycleType.parse("1 3 1 2"));
+        assertNotEquals(t, new Permutation("(ABC)(DE)(FG)", alpha)
+                        .cycleType());
+        assertTrue(t.compareTo(CycleType.parse("3 3 1")) < 0);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testComposeSizes() {
+        new Permutation("", new Alphabet("AB")).compose(
+                new Permutation("", new Alphabet("ABC")));
+    }
 }
@@ -0,0 +1,347 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** A stream of '*' setting lines and messages, converted as by Session,
+ *  but in three overlapping stages: a reader thread that parses the
+ *  input into batches of message characters, one or more converter
+ *  threads, and a writer (the thread calling process) that prints the
+ *  converted batches, in their original order, in groups of five.
+ *  Each batch records the keying of its setting line and the position
+ *  of its first character since that line, so batches, whether from
+ *  the same or from different setting lines, convert independently.
+ *  Batches are drawn from a fixed pool and reused, which bounds the
+ *  memory used and makes a slow stage hold back the others.
+ *  @author Yulan Rong
+ */
+class Pipeline {
+
+    /** A pipeline converting the contents of INPUT with Machines of
+     *  CONFIG on CONVERTERS threads, sending the results to OUTPUT.
+     *  Setting lines go through KEYS, a cache for CONFIG. */
+    Pipeline(Configuration config, KeyCache keys, Reader input,
+             GroupWriter output, int converters) {
+        if (converters <= 0) {
+            throw new EnigmaException("need at least one converter thread");
+        }
+        _config = config;
+        _keys = keys;
+        _input = input;
+        _output = output;
+        _converters = converters;
+        int batches = 2 * converters + 2;
+        _free = new ArrayBlockingQueue<>(batches);
+        _ordered = new ArrayBlockingQueue<>(batches);
+        _work = new ArrayBlockingQueue<>(batches);
+        for (int i = 0; i < batches; i += 1) {
+            _free.add(new Batch());
+        }
+    }
+
+    /** Apply my machines to the messages in my input, sending the
+     *  results to my output, which is flushed but not closed. */
+    void process() throws IOException {
+        ExecutorService threads = Executors.newFixedThreadPool(
+                _converters + 1, runnable -> {
+                    Thread thread = new Thread(runnable);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            threads.execute(this::read);
+            for (int i = 0; i < _converters; i += 1) {
+                threads.execute(this::convert);
+            }
+            write();
+        } catch (InterruptedException excp) {
+            throw new EnigmaException("interrupted");
+        } finally {
+            threads.shutdownNow();
+            _output.flush();
+        }
+    }
+
+    /** Print the converted batches in order until the last one, and
+     *  throw the first error found by any stage.  As with Session, the
+     *  lines converted before an error are printed in full, and nothing
+     *  of the line with the error. */
+    private void write() throws IOException, InterruptedException {
+        while (true) {
+            Batch batch = _ordered.take();
+            batch.await();
+            int start = 0;
+            for (int k = 0; k < batch._numEnds; k += 1) {
+                if (batch._error != null
+                        && batch._ends[k] > batch._converted) {
+                    break;
+                }
+                _output.write(batch._text, start, batch._ends[k] - start);
+                _output.endLine();
+                start = batch._ends[k];
+            }
+            if (batch._error instanceof IOException) {
+                throw (IOException) batch._error;
+            } else if (batch._error != null) {
+                throw (RuntimeException) batch._error;
+            }
+            _output.write(batch._text, start, batch._length - start);
+            if (batch._last) {
+                return;
+            }
+            batch.clear();
+            _free.put(batch);
+        }
+    }
+
+    /** Convert batches from _work until the thread is interrupted. */
+    private void convert() {
+        Machine machine = _config.newMachine();
+        Machine.Keying current = null;
+        try {
+            while (true) {
+                Batch batch = _work.take();
+                try {
+                    if (batch._keying != current) {
+                        machine.rekey(batch._keying);
+                        current = batch._keying;
+                    }
+                    machine.setStateAt(batch._start);
+                    CharBuffer text = CharBuffer.wrap(batch._text, 0,
+                                                      batch._length);
+                    CharBuffer converted = text.duplicate();
+                    try {
+                        machine.convert(text, converted);
+                    } finally {
+                        batch._converted = converted.position();
+                    }
+                } catch (RuntimeException excp) {
+                    batch._error = excp;
+                }
+                batch.finish();
+            }
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Parse my input into batches, handing each to the converters and
+     *  the writer, until the input or a batch ends in error. */
+    private void read() {
+        try {
+            Machine keyer = _config.newMachine();
+            Batch batch = _free.take();
+            try {
+                if (peek() != '*') {
+                    throw new EnigmaException("Not start with setting.");
+                }
+                Machine.Keying keying = null;
+                long position = 0;
+                while (peek() >= 0) {
+                    if (peek() == '*') {
+                        if (batch._length > 0 || batch._numEnds > 0) {
+                            submit(batch, true);
+                            batch = _free.take();
+                        }
+                        int line = _line;
+                        keying = _keys.setUp(keyer, readLine(), line);
+                        position = 0;
+                        batch._keying = keying;
+                        batch._start = position;
+                        continue;
+                    }
+                    for (int c = peek(); c >= 0 && c != '\n' && c != '\r';
+                         c = peek()) {
+                        if (c != ' ') {
+                            if (batch._length == batch._text.length) {
+                                submit(batch, true);
+                                batch = _free.take();
+                                batch._keying = keying;
+                                batch._start = position;
+                            }
+                            batch._text[batch._length] = (char) c;
+                            batch._length += 1;
+                            position += 1;
+                        }
+                        _pos += 1;
+                    }
+                    skipLineEnd();
+                    if (batch._numEnds == batch._ends.length) {
+                        submit(batch, true);
+                        batch = _free.take();
+                        batch._keying = keying;
+                        batch._start = position;
+                    }
+                    batch._ends[batch._numEnds] = batch._length;
+                    batch._numEnds += 1;
+                }
+            } catch (IOException | RuntimeException excp) {
+                if (batch._length > 0 || batch._numEnds > 0) {
+                    submit(batch, true);
+                    batch = _free.take();
+                }
+                batch._error = excp;
+            }
+            batch._last = true;
+            submit(batch, batch._error == null);
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Hand BATCH to the writer and, if CONVERT, to the converters;
+     *  otherwise it is ready to write as it is. */
+    private void submit(Batch batch, boolean convert)
+        throws InterruptedException {
+        _ordered.put(batch);
+        if (convert && batch._length > 0) {
+            _work.put(batch);
+        } else {
+            batch.finish();
+        }
+    }
+
+    /** Return the next character of _input without consuming it, or -1
+     *  at the end of the input. */
+    private int peek() throws IOException {
+        if (_pos == _limit) {
+            _limit = Math.max(0, _input.read(_buffer));
+            _pos = 0;
+        }
+        return _pos < _limit ? _buffer[_pos] : -1;
+    }
+
+    /** Consume the line terminator, if any, at the current position. */
+    private void skipLineEnd() throws IOException {
+        boolean ended = false;
+        if (peek() == '\r') {
+            _pos += 1;
+            ended = true;
+        }
+        if (peek() == '\n') {
+            _pos += 1;
+            ended = true;
+        }
+        if (ended) {
+            _line += 1;
+        }
+    }
+
+    /** Read and return the rest of the current line of _input. */
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c = peek(); c >= 0 && c != '\n' && c != '\r'; c = peek()) {
+            line.append((char) c);
+            _pos += 1;
+        }
+        skipLineEnd();
+        return line.toString();
+    }
+
+    /** A block of message characters, all under one setting line, with
+     *  the places where message lines end among them. */
+    private static class Batch {
+
+        /** Wait until I have been converted. */
+        synchronized void await() throws InterruptedException {
+            while (!_done) {
+                wait();
+            }
+        }
+
+        /** Mark me converted. */
+        synchronized void finish() {
+            _done = true;
+            notifyAll();
+        }
+
+        /** Make me empty and unconverted, ready for reuse. */
+        synchronized void clear() {
+            _length = 0;
+            _numEnds = 0;
+            _converted = 0;
+            _keying = null;
+            _start = 0;
+            _error = null;
+            _last = false;
+            _done = false;
+        }
+
+        /** The message characters, converted in place. */
+        private final char[] _text = new char[BATCH];
+
+        /** Number of characters in _text. */
+        private int _length;
+
+        /** Offsets in _text at which message lines end. */
+        private final int[] _ends = new int[BATCH / LINES];
+
+        /** Number of entries in _ends. */
+        private int _numEnds;
+
+        /** Number of characters of _text converted. */
+        private int _converted;
+
+        /** Keying of the setting line in force. */
+        private Machine.Keying _keying;
+
+        /** Position of _text[0] since that setting line. */
+        private long _start;
+
+        /** The error found in reading or converting me, if any. */
+        private Exception _error;
+
+        /** True iff this is the last batch. */
+        private boolean _last;
+
+        /** True once the batch is ready to write. */
+        private boolean _done;
+    }
+
+    /** Number of characters in each batch. */
+    static final int BATCH = 1 << 16;
+
+    /** Ratio of BATCH to the number of line ends a batch can hold. */
+    private static final int LINES = 16;
+
+    /** Configuration of my machines. */
+    private final Configuration _config;
+
+    /** Cache of keyings for setting lines. */
+    private final KeyCache _keys;
+
+    /** Source of input messages. */
+    private final Reader _input;
+
+    /** Destination of converted messages. */
+    private final GroupWriter _output;
+
+    /** Number of converter threads. */
+    private final int _converters;
+
+    /** Batches ready to be filled. */
+    private final BlockingQueue<Batch> _free;
+
+    /** Filled batches, in input order, waiting to be written. */
+    private final BlockingQueue<Batch> _ordered;
+
+    /** Filled batches waiting to be converted. */
+    private final BlockingQueue<Batch> _work;
+
+    /** Characters read from _input. */
+    private final char[] _buffer = new char[Session.BLOCK];
+
+    /** Position of the next unread character in _buffer. */
+    private int _pos;
+
+    /** Number of valid characters in _buffer. */
+    private int _limit;
+
+    /** Number of the current line of _input. */
+    private int _line = 1;
+}
@@ -0,0 +1,125 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.MachineTest.navalConfiguration;
+import static enigma.MachineTest.randomMessage;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author Yulan Rong
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the output of a Session of CONFIG applied to INPUT. */
+    private static String session(Configuration config, String input)
+        throws IOException {
+        StringWriter result = new StringWriter();
+        GroupWriter output = new GroupWriter(result);
+        new Session(config.newMachine(), new StringReader(input), output,
+                    null, false).process();
+        return result.toString();
+    }
+
+    /** Return the output of a Pipeline of CONFIG with CONVERTERS threads
+     *  applied to INPUT. */
+    private static String pipeline(Configuration config, String input,
+                                   int converters) throws IOException {
+        StringWriter result = new StringWriter();
+        GroupWriter output = new GroupWriter(result);
+        new Pipeline(config, new KeyCache(config, KeyCache.CAPACITY),
+                     new StringReader(input), output, converters).process();
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkMatchesSession() throws IOException {
+        Configuration config = navalConfiguration();
+        String[] settings = {
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+            "* C Gamma V II VI QMZA (AB)",
+        };
+        StringBuilder input = new StringBuilder();
+        for (int k = 0; k < 6; k += 1) {
+            input.append(settings[k % 2]).append('\n');
+            String msg = randomMessage(Pipeline.BATCH * k / 2 + 7, k);
+            input.append(msg, 0, msg.length() / 3).append("\r\n\n");
+            input.append(msg.substring(msg.length() / 3).replace("Q", " Q"));
+            input.append('\n');
+        }
+        input.append("* B Beta III IV I AXLE\n\n\n");
+        for (int n = 1; n <= 3; n += 1) {
+            assertEquals(session(config, input.toString()),
+                         pipeline(config, input.toString(), n));
+        }
+    }
+
+    @Test
+    public void checkErrorsInOrder() throws IOException {
+        Configuration config = navalConfiguration();
+        String input = "* B Beta III IV I AXLE\nHELLOWORLD\nHEL-LO\nHELLO\n";
+        StringWriter result = new StringWriter();
+        GroupWriter output = new GroupWriter(result);
+        try {
+            new Pipeline(config, new KeyCache(config, KeyCache.CAPACITY),
+                         new StringReader(input), output, 2).process();
+            fail("bad character accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(pipeline(config, input.substring(0, 34), 1),
+                         result.toString());
+        }
+        try {
+            pipeline(config, "HELLO\n", 1);
+            fail("missing setting accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("Not start with setting.", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void checkLongLineErrorPrintsNothing() throws IOException {
+        Configuration config = navalConfiguration();
+        String good = "* B Beta III IV I AXLE (HQ)\n"
+            + randomMessage(23, 5) + "\n";
+        String input = good + randomMessage(2 * Session.BLOCK + 417, 6)
+            + "a\nHELLO\n";
+        String expected = session(config, good);
+        for (int threads = 0; threads <= 2; threads += 1) {
+            StringWriter result = new StringWriter();
+            GroupWriter output = new GroupWriter(result);
+            try {
+                new Session(config.newMachine(), new StringReader(input),
+                            output,
+                            threads == 0 ? null : new ForkJoinPool(threads),
+                            false).process();
+                fail("bad character accepted");
+            } catch (EnigmaException excp) {
+                assertEquals(expected, result.toString());
+            }
+        }
+        StringWriter result = new StringWriter();
+        try {
+            new Pipeline(config, new KeyCache(config, KeyCache.CAPACITY),
+                         new StringReader(input),
+                         new GroupWriter(result), 2).process();
+            fail("bad character accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(expected, result.toString());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.error;
+
+/** Log-probabilities of the quadgrams (sequences of four characters) of
+ *  an alphabet, used to score candidate plaintexts.  The table is one
+ *  flat array indexed by the quadgram's characters as a base-size
+ *  number, so scoring a text is a run of array reads.
+ *
+ *  A table is trained from sample text or loaded from a binary file
+ *  written by write(): the int MAGIC, the alphabet size n, the n
+ *  characters of the alphabet as chars, and then the n^4 scores as
+ *  floats, all big-endian.
+ *  @author Yulan Rong
+ */
+class Quadgrams {
+
+    /** A table for ALPHABET holding SCORES, indexed as described above. */
+    private Quadgrams(Alphabet alphabet, float[] scores) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _scores = scores;
+    }
+
+    /** Return the table of the log10-probabilities of the quadgrams of
+     *  ALPHABET in TEXT, ignoring characters outside ALPHABET.  Unseen
+     *  quadgrams score as if seen a tenth of a time. */
+    static Quadgrams train(Alphabet alphabet, CharSequence text) {
+        float[] scores = new float[entries(alphabet)];
+        int size = alphabet.size();
+        int mask = scores.length / size;
+        long total = 0;
+        int index = 0, run = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (alphabet.contains(c)) {
+                index = index % mask * size + alphabet.toInt(c);
+                run += 1;
+                if (run >= QUAD) {
+                    scores[index] += 1;
+                    total += 1;
+                }
+            }
+        }
+        if (total == 0) {
+            throw error("no quadgrams in the sample text");
+        }
+        float floor = (float) Math.log10(UNSEEN / total);
+        for (int q = 0; q < scores.length; q += 1) {
+            scores[q] = scores[q] == 0 ? floor
+                : (float) Math.log10(scores[q] / total);
+        }
+        return new Quadgrams(alphabet, scores);
+    }
+
+    /** Return the table in the file named NAME, which must be for
+     *  ALPHABET.  The file is memory-mapped and its scores copied in
+     *  bulk. */
+    static Quadgrams load(Alphabet alphabet, String name) {
+        try (FileChannel in = FileChannel.open(Paths.get(name),
+                                               StandardOpenOption.READ)) {
+            int size = alphabet.size();
+            long header = 2 * Integer.BYTES + (long) size * Character.BYTES;
+            long length = header + (long) entries(alphabet) * Float.BYTES;
+            if (in.size() != length) {
+                throw error("%s is not a quadgram table for this alphabet",
+                            name);
+            }
+            MappedByteBuffer map =
+                in.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            boolean matches = map.getInt() == MAGIC && map.getInt() == size;
+            for (int i = 0; i < size && matches; i += 1) {
+                matches = map.getChar() == alphabet.toChar(i);
+            }
+            if (!matches) {
+                throw error("%s is not a quadgram table for this alphabet",
+                            name);
+            }
+            float[] scores = new float[entries(alphabet)];
+            map.asFloatBuffer().get(scores);
+            return new Quadgrams(alphabet, scores);
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** Write me to the file named NAME in the format load() reads. */
+    void write(String name) {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(name)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(_size);
+            for (int i = 0; i < _size; i += 1) {
+                out.writeChar(_alphabet.toChar(i));
+            }
+            ByteBuffer block = ByteBuffer.allocate(BLOCK * Float.BYTES);
+            for (int q = 0; q < _scores.length; q += BLOCK) {
+                block.clear();
+                int n = Math.min(BLOCK, _scores.length - q);
+                block.asFloatBuffer().put(_scores, q, n);
+                out.write(block.array(), 0, n * Float.BYTES);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the score of the first LENGTH characters of TEXT, given as
+     *  character indices: the sum of the scores of its quadgrams. */
+    double score(int[] text, int length) {
+        if (length < QUAD) {
+            return 0;
+        }
+        float[] scores = _scores;
+        int size = _size, mask = scores.length / size;
+        int index = (text[0] * size + text[1]) * size + text[2];
+        double result = 0;
+        for (int i = QUAD - 1; i < length; i += 1) {
+            index = index % mask * size + text[i];
+            result += scores[index];
+        }
+        return result;
+    }
+
+    /** Return the number of quadgrams of ALPHABET, if a table of them is
+     *  allowed. */
+    private static int entries(Alphabet alphabet) {
+        long n = alphabet.size();
+        if (n * n * n * n > MAX_ENTRIES) {
+            throw error("alphabet too large for a quadgram table");
+        }
+        return (int) (n * n * n * n);
+    }
+
+    /** First word of a table file. */
+    static final int MAGIC = 0x51475231;
+
+    /** Length of a quadgram. */
+    static final int QUAD = 4;
+
+    /** Largest number of entries in a table. */
+    static final long MAX_ENTRIES = 1 << 28;
+
+    /** Count assumed for unseen quadgrams. */
+    private static final double UNSEEN = 0.1;
+
+    /** Number of scores written at once. */
+    private static final int BLOCK = 1 << 12;
+
+    /** Alphabet of the quadgrams. */
+    private final Alphabet _alphabet;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Score of each quadgram. */
+    private final float[] _scores;
+}
@@ -76,6 +76,11 @@ class Rotor {
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
+        return notchAt(_setting);
+    }
+
+    /** Returns true iff I would be at a notch in setting POSN. */
+    boolean notchAt(int posn) {
         return false;
     }
 
@@ -0,0 +1,124 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.error;
+
+/** A long-running enigma service.  It reads its configuration once and
+ *  then accepts any number of concurrent client connections, each a
+ *  Session with its own Machine: the client sends '*' setting lines and
+ *  messages, exactly as in an input file, and receives the converted
+ *  messages in groups of five.  Setting lines are keyed through one
+ *  KeyCache shared by all sessions.  A session that hits an error receives
+ *  a line "Error: ..." and is closed.
+ *  @author Yulan Rong
+ */
+class Server {
+
+    /** A server for CONFIG listening at ADDRESS, which is either a TCP
+     *  port number on the loopback interface or the path of a Unix-domain
+     *  socket to be created. */
+    Server(Configuration config, String address) {
+        _config = config;
+        _address = address;
+        _keys = new KeyCache(config, KeyCache.CAPACITY);
+    }
+
+    /** Accept and serve connections until the process is stopped. */
+    void run() {
+        try (ServerSocketChannel server = open()) {
+            ExecutorService sessions = sessionExecutor();
+            while (true) {
+                SocketChannel client = server.accept();
+                sessions.execute(() -> serve(client));
+            }
+        } catch (IOException excp) {
+            throw error("could not serve at %s: %s", _address,
+                        excp.getMessage());
+        }
+    }
+
+    /** Return a channel bound to my address. */
+    private ServerSocketChannel open() throws IOException {
+        SocketAddress address;
+        ServerSocketChannel server;
+        if (_address.matches("\\d+")) {
+            server = ServerSocketChannel.open();
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                            Integer.parseInt(_address));
+        } else {
+            Path path = Paths.get(_address);
+            if (Files.exists(path)) {
+                throw error("%s already exists", _address);
+            }
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            address = UnixDomainSocketAddress.of(path);
+            path.toFile().deleteOnExit();
+        }
+        server.bind(address);
+        return server;
+    }
+
+    /** Run a session on CLIENT, closing it at the end. */
+    private void serve(SocketChannel client) {
+        Charset charset = Charset.defaultCharset();
+        try (SocketChannel channel = client) {
+            Reader input = Channels.newReader(channel, charset);
+            Writer output =
+                new BufferedWriter(Channels.newWriter(channel, charset));
+            GroupWriter grouped = new GroupWriter(output);
+            try {
+                Session session = new Session(_config.newMachine(), input,
+                                              grouped, null, true);
+                session.setKeyCache(_keys);
+                session.process();
+            } catch (EnigmaException excp) {
+                output.write(String.format("Error: %s%n",
+                                           excp.getMessage()));
+                output.flush();
+            }
+        } catch (IOException excp) {
+            /* The client went away; nothing left to do. */
+            return;
+        }
+    }
+
+    /** Return an executor running each task on a virtual thread when the
+     *  Java runtime has them, and on a pooled platform thread otherwise. */
+    private static ExecutorService sessionExecutor() {
+        try {
+            Method factory =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /** The shared configuration. */
+    private final Configuration _config;
+
+    /** Keyings of setting lines, shared by all sessions. */
+    private final KeyCache _keys;
+
+    /** Where I listen. */
+    private final String _address;
+}
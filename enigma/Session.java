@@ -0,0 +1,242 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+/** One stream of '*' setting lines and messages, converted with one
+ *  Machine and printed in groups of five.
+ *  @author Yulan Rong
+ */
+class Session {
+
+    /** A session converting the contents of INPUT with M and sending
+     *  them to OUTPUT.  POOL, if not null, converts message lines in
+     *  parallel.  If INTERACTIVE, output is flushed whenever the session
+     *  waits for more input. */
+    Session(Machine M, Reader input, GroupWriter output, ForkJoinPool pool,
+            boolean interactive) {
+        _machine = M;
+        _input = input;
+        _output = output;
+        _pool = pool;
+        _interactive = interactive;
+        _pending = CharBuffer.allocate(
+                pool == null ? BLOCK : Machine.CHUNK * PARALLEL_CHUNKS);
+    }
+
+    /** Have setting lines go through KEYS, a cache for my machine's
+     *  configuration, or through none if KEYS is null. */
+    void setKeyCache(KeyCache keys) {
+        _keys = keys;
+    }
+
+    /** Apply my machine to the messages in my input, sending the
+     *  results to my output, which is flushed but not closed. */
+    void process() throws IOException {
+        try {
+            if (peek() != '*') {
+                throw new EnigmaException("Not start with setting.");
+            }
+            while (peek() >= 0) {
+                if (peek() == '*') {
+                    int line = _line;
+                    if (_keys != null) {
+                        _keys.setUp(_machine, readLine(), line);
+                    } else {
+                        setUp(_machine, readLine(), line);
+                    }
+                } else {
+                    convertLine();
+                }
+            }
+        } finally {
+            _output.flush();
+        }
+    }
+
+    /** Set M according to the specification given on SETTINGS,
+     *  which must have the format specified in the assignment. */
+    static void setUp(Machine M, String settings) {
+        setUp(M, settings, 1);
+    }
+
+    /** Set M according to the specification given on SETTINGS, line
+     *  number LINE of its input, which must have the format specified in
+     *  the assignment.  Errors give their line and column. */
+    static void setUp(Machine M, String settings, int line) {
+        Tokenizer read = new Tokenizer(settings, line);
+        if (!settings.startsWith("*")) {
+            throw read.error("Setting must start with '*'.");
+        }
+        String tooShort = "Setting line is too short.";
+        String[] newRotors = new String[M.numRotors()];
+        read.next(tooShort);
+        for (int i = 0; i < M.numRotors(); i += 1) {
+            newRotors[i] = read.next(tooShort);
+        }
+        try {
+            M.insertRotors(newRotors);
+        } catch (EnigmaException excp) {
+            throw read.error(excp);
+        }
+        StringBuilder cycles = new StringBuilder();
+        String firstSetting = read.next(tooShort);
+        try {
+            firstSetting = M.configuration().alphabet().decode(firstSetting);
+        } catch (EnigmaException excp) {
+            throw read.error(excp);
+        }
+        if (firstSetting.length() == M.numRotors() - 1) {
+            try {
+                M.setRotors(firstSetting);
+            } catch (EnigmaException excp) {
+                throw read.error(excp);
+            }
+            while (read.nextIsCycle(true)) {
+                cycles.append(read.next(tooShort)).append(' ');
+            }
+        }
+        if (read.hasNext()) {
+            read.next(tooShort);
+            throw read.error("Wrong setting for plugboard.");
+        }
+        try {
+            M.setPlugboard(new Permutation(cycles.toString(),
+                                           M.configuration().alphabet()));
+        } catch (EnigmaException excp) {
+            throw read.error(excp);
+        }
+    }
+
+    /** Return the next character of _input without consuming it, or -1
+     *  at the end of the input. */
+    private int peek() throws IOException {
+        if (_pos == _limit) {
+            if (_interactive) {
+                _output.flush();
+            }
+            _limit = Math.max(0, _input.read(_buffer));
+            _pos = 0;
+        }
+        return _pos < _limit ? _buffer[_pos] : -1;
+    }
+
+    /** Consume the line terminator, if any, at the current position. */
+    private void skipLineEnd() throws IOException {
+        boolean ended = false;
+        if (peek() == '\r') {
+            _pos += 1;
+            ended = true;
+        }
+        if (peek() == '\n') {
+            _pos += 1;
+            ended = true;
+        }
+        if (ended) {
+            _line += 1;
+        }
+    }
+
+    /** Read and return the rest of the current line of _input. */
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c = peek(); c >= 0 && c != '\n' && c != '\r'; c = peek()) {
+            line.append((char) c);
+            _pos += 1;
+        }
+        skipLineEnd();
+        return line.toString();
+    }
+
+    /** Convert the rest of the current line of _input, ignoring blanks,
+     *  and print the result in groups of five.  The line is read and
+     *  converted in blocks, but printed only once all of it has been
+     *  converted, so that a line with an error prints nothing. */
+    private void convertLine() throws IOException {
+        CharBuffer pending = _pending, converted = _converted;
+        StringBuilder result = _result;
+        result.setLength(0);
+        boolean done = false;
+        while (!done) {
+            int c = peek();
+            if (c < 0 || c == '\n' || c == '\r') {
+                done = true;
+            } else {
+                if (c != ' ') {
+                    pending.put((char) c);
+                }
+                _pos += 1;
+            }
+            if (done || !pending.hasRemaining()) {
+                pending.flip();
+                if (_pool != null) {
+                    result.append(_machine.convertParallel(pending, _pool));
+                } else {
+                    while (pending.hasRemaining()) {
+                        _machine.convert(pending, converted);
+                        result.append(converted.array(), 0,
+                                      converted.position());
+                        converted.clear();
+                    }
+                }
+                pending.clear();
+            }
+        }
+        skipLineEnd();
+        _output.write(result.toString());
+        _output.endLine();
+        if (result.capacity() > RETAINED) {
+            _result = new StringBuilder();
+        }
+    }
+
+    /** Size of the blocks in which input is read and converted. */
+    static final int BLOCK = 1 << 13;
+
+    /** Largest capacity of _result kept from one line to the next. */
+    private static final int RETAINED = 1 << 20;
+
+    /** Number of Machine.CHUNKs handed to convertParallel at once. */
+    private static final int PARALLEL_CHUNKS = 64;
+
+    /** The machine converting messages. */
+    private final Machine _machine;
+
+    /** Cache of keyings for setting lines, or null. */
+    private KeyCache _keys;
+
+    /** Source of input messages. */
+    private final Reader _input;
+
+    /** Destination of converted messages. */
+    private final GroupWriter _output;
+
+    /** Pool converting message lines in parallel, or null. */
+    private final ForkJoinPool _pool;
+
+    /** True iff output is flushed before waiting for input. */
+    private final boolean _interactive;
+
+    /** Characters read from _input. */
+    private final char[] _buffer = new char[BLOCK];
+
+    /** Position of the next unread character in _buffer. */
+    private int _pos;
+
+    /** Number of valid characters in _buffer. */
+    private int _limit;
+
+    /** Number of the current line of _input. */
+    private int _line = 1;
+
+    /** Message characters waiting to be converted. */
+    private final CharBuffer _pending;
+
+    /** Converted characters waiting to be printed. */
+    private final CharBuffer _converted = CharBuffer.allocate(BLOCK);
+
+    /** Conversion of the current line so far. */
+    private StringBuilder _result = new StringBuilder();
+}
@@ -0,0 +1,385 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.error;
+
+/** A ciphertext-only key search.  It first tries every rotor order from
+ *  a Configuration that fits its slots and every initial setting, with
+ *  no plugboard, and keeps the candidates whose decipherments have the
+ *  highest index of coincidence: the plugboard leaves only some
+ *  characters wrong, so the right rotors give text with plaintext-like
+ *  character frequencies.  It then recovers the plugboard of each
+ *  candidate by hill climbing: it repeatedly tries plugging each pair of
+ *  characters (unplugging their previous partners), keeping a change
+ *  whenever it raises the quadgram score of the decipherment, until no
+ *  change helps.  The rotors' conversion at each position of the
+ *  ciphertext is tabulated once per candidate, so that each trial
+ *  plugboard is scored by table lookups alone.  Both stages are split
+ *  among the threads of a ForkJoinPool.
+ *  @author Yulan Rong
+ */
+class Solver {
+
+    /** A search in CONFIG for the key of CIPHERTEXT, a string of
+     *  characters in CONFIG's alphabet, scoring plaintexts with
+     *  QUADGRAMS. */
+    Solver(Configuration config, String ciphertext, Quadgrams quadgrams) {
+        _config = config;
+        _alphabet = config.alphabet();
+        _size = _alphabet.size();
+        if (quadgrams.alphabet().size() != _size) {
+            throw error("quadgrams are for a different alphabet");
+        }
+        _quadgrams = quadgrams;
+        _cipher = new int[ciphertext.length()];
+        for (int i = 0; i < _cipher.length; i += 1) {
+            if (!_alphabet.contains(ciphertext.charAt(i))) {
+                throw error("character not in the alphabet: %c",
+                            ciphertext.charAt(i));
+            }
+            _cipher[i] = _alphabet.toInt(ciphertext.charAt(i));
+        }
+        if (_cipher.length < Quadgrams.QUAD) {
+            throw error("ciphertext too short to score");
+        }
+        _orders = config.orders();
+        if (_orders.isEmpty()) {
+            throw error("no order of the available rotors fits the slots");
+        }
+        _starts = config.numSettings(Long.MAX_VALUE / _orders.size());
+        if (_starts < 0) {
+            throw error("too many rotor settings to search");
+        }
+    }
+
+    /** Keep the best N > 0 candidates of the first stage for hill
+     *  climbing. */
+    void setCandidates(int n) {
+        if (n <= 0) {
+            throw error("need at least one candidate");
+        }
+        _candidates = n;
+    }
+
+    /** Return the keys found, best first, one for each candidate kept
+     *  from the first stage, running on POOL. */
+    List<Solution> solve(ForkJoinPool pool) {
+        long blocks = (_starts + BLOCK - 1) / BLOCK;
+        List<Candidate> candidates =
+            pool.invoke(new RankTask(blocks, 0, blocks * _orders.size()));
+        List<Solution> result =
+            pool.invoke(new ClimbTask(candidates, 0, candidates.size()));
+        result.sort((x, y) -> Double.compare(y.score(), x.score()));
+        return result;
+    }
+
+    /** A key found by the search. */
+    static class Solution {
+
+        /** A key with rotors ROTORS at SETTING and plugboard cycles
+         *  PLUGBOARD, whose decipherment scores SCORE. */
+        Solution(String[] rotors, String setting, String plugboard,
+                 double score) {
+            _rotors = rotors;
+            _setting = setting;
+            _plugboard = plugboard;
+            _score = score;
+        }
+
+        /** Return the names of the rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return the initial setting of the rotors. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard, as cycles. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return the quadgram score of the decipherment. */
+        double score() {
+            return _score;
+        }
+
+        /** Return a setting line for this key. */
+        @Override
+        public String toString() {
+            String line = "* " + String.join(" ", _rotors) + " " + _setting;
+            return _plugboard.isEmpty() ? line : line + " " + _plugboard;
+        }
+
+        /** Rotor names. */
+        private final String[] _rotors;
+
+        /** Initial setting. */
+        private final String _setting;
+
+        /** Plugboard cycles. */
+        private final String _plugboard;
+
+        /** Quadgram score. */
+        private final double _score;
+    }
+
+    /** A rotor order and initial setting kept by the first stage. */
+    private static class Candidate {
+
+        /** Setting #START of order #ORDER, with index of coincidence
+         *  (unnormalized) COINCIDENCES. */
+        Candidate(int order, long start, long coincidences) {
+            _order = order;
+            _start = start;
+            _coincidences = coincidences;
+        }
+
+        /** Order number. */
+        private final int _order;
+
+        /** Setting number. */
+        private final long _start;
+
+        /** Number of pairs of equal characters in the decipherment. */
+        private final long _coincidences;
+    }
+
+    /** Return the best of the candidates in X and Y, at most
+     *  _candidates of them, best first.  X and Y must be ordered
+     *  likewise; ties go to X. */
+    private List<Candidate> merge(List<Candidate> x, List<Candidate> y) {
+        List<Candidate> result = new ArrayList<>(_candidates);
+        int i = 0, j = 0;
+        while (result.size() < _candidates
+               && (i < x.size() || j < y.size())) {
+            if (j == y.size() || i < x.size()
+                && x.get(i)._coincidences >= y.get(j)._coincidences) {
+                result.add(x.get(i++));
+            } else {
+                result.add(y.get(j++));
+            }
+        }
+        return result;
+    }
+
+    /** Ranks the candidates of a range of blocks by index of
+     *  coincidence.  Block number b covers up to BLOCK consecutive
+     *  initial settings of one rotor order. */
+    private class RankTask extends RecursiveTask<List<Candidate>> {
+
+        /** A task ranking blocks FROM to TO (exclusive), of which there
+         *  are BLOCKS for each order. */
+        RankTask(long blocks, long from, long to) {
+            _blocks = blocks;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected List<Candidate> compute() {
+            if (_to - _from > 1) {
+                long mid = (_from + _to) >>> 1;
+                RankTask left = new RankTask(_blocks, _from, mid);
+                left.fork();
+                List<Candidate> right =
+                    new RankTask(_blocks, mid, _to).compute();
+                return merge(left.join(), right);
+            }
+            List<Candidate> result = new ArrayList<>();
+            if (_from == _to) {
+                return result;
+            }
+            int order = (int) (_from / _blocks);
+            long first = _from % _blocks * BLOCK;
+            long last = Math.min(first + BLOCK, _starts);
+            Machine M = _config.newMachine();
+            M.insertRotors(_orders.get(order));
+            int[] counts = new int[_size];
+            long worst = -1;
+            for (long start = first; start < last; start += 1) {
+                M.setRotors(_config.setting(start));
+                long coincidences = coincidences(M, counts);
+                if (coincidences > worst) {
+                    List<Candidate> one = new ArrayList<>(1);
+                    one.add(new Candidate(order, start, coincidences));
+                    result = merge(result, one);
+                    if (result.size() == _candidates) {
+                        worst = result.get(_candidates - 1)._coincidences;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /** Number of blocks for each order. */
+        private final long _blocks;
+
+        /** First block to rank. */
+        private final long _from;
+
+        /** Block after the last to rank. */
+        private final long _to;
+    }
+
+    /** Return the number of pairs of equal characters in the
+     *  decipherment of my ciphertext by M, counting characters in
+     *  COUNTS. */
+    private long coincidences(Machine M, int[] counts) {
+        for (int c = 0; c < _size; c += 1) {
+            counts[c] = 0;
+        }
+        for (int c : _cipher) {
+            counts[M.convert(c)] += 1;
+        }
+        long result = 0;
+        for (int n : counts) {
+            result += (long) n * (n - 1);
+        }
+        return result;
+    }
+
+    /** Recovers the plugboards of a range of candidates. */
+    private class ClimbTask extends RecursiveTask<List<Solution>> {
+
+        /** A task climbing from CANDIDATES #FROM to #TO (exclusive). */
+        ClimbTask(List<Candidate> candidates, int from, int to) {
+            _list = candidates;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected List<Solution> compute() {
+            if (_to - _from > 1) {
+                int mid = (_from + _to) >>> 1;
+                ClimbTask left = new ClimbTask(_list, _from, mid);
+                left.fork();
+                List<Solution> right = new ClimbTask(_list, mid, _to)
+                    .compute();
+                List<Solution> result = left.join();
+                result.addAll(right);
+                return result;
+            }
+            List<Solution> result = new ArrayList<>();
+            if (_from < _to) {
+                result.add(climb(_list.get(_from)));
+            }
+            return result;
+        }
+
+        /** Candidates. */
+        private final List<Candidate> _list;
+
+        /** First candidate to climb from. */
+        private final int _from;
+
+        /** Candidate after the last to climb from. */
+        private final int _to;
+    }
+
+    /** Return the key found by hill climbing on the plugboard of
+     *  CANDIDATE. */
+    private Solution climb(Candidate candidate) {
+        String[] order = _orders.get(candidate._order);
+        String setting = _config.setting(candidate._start);
+        Machine M = _config.newMachine();
+        M.insertRotors(order);
+        M.setRotors(setting);
+        int[][] scramblers = new int[_cipher.length][_size];
+        M.scramblers(0, scramblers);
+        int[] plain = new int[_cipher.length];
+        int[] partners = new int[_size], trial = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            partners[c] = c;
+        }
+        double best = score(scramblers, partners, plain);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int a = 0; a < _size; a += 1) {
+                for (int b = a + 1; b < _size; b += 1) {
+                    System.arraycopy(partners, 0, trial, 0, _size);
+                    trial[trial[a]] = trial[a];
+                    trial[a] = a;
+                    trial[trial[b]] = trial[b];
+                    trial[b] = b;
+                    if (partners[a] != b) {
+                        trial[a] = b;
+                        trial[b] = a;
+                    }
+                    double score = score(scramblers, trial, plain);
+                    if (score > best) {
+                        best = score;
+                        System.arraycopy(trial, 0, partners, 0, _size);
+                        improved = true;
+                    }
+                }
+            }
+        }
+        return new Solution(order, setting, cycles(partners), best);
+    }
+
+    /** Return the quadgram score of the decipherment of my ciphertext by
+     *  rotors that convert its character #i as SCRAMBLERS[i] does (see
+     *  Machine.scramblers) and the plugboard pairing each character c
+     *  with PARTNERS[c], leaving the decipherment in PLAIN. */
+    private double score(int[][] scramblers, int[] partners, int[] plain) {
+        for (int i = 0; i < _cipher.length; i += 1) {
+            plain[i] = partners[scramblers[i][partners[_cipher[i]]]];
+        }
+        return _quadgrams.score(plain, plain.length);
+    }
+
+    /** Return the swapped pairs in PARTNERS as plugboard cycles. */
+    private String cycles(int[] partners) {
+        StringBuilder result = new StringBuilder();
+        for (int c = 0; c < _size; c += 1) {
+            if (partners[c] > c) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(').append(_alphabet.toChar(c))
+                    .append(_alphabet.toChar(partners[c])).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Number of initial settings in a unit of work of the first
+     *  stage. */
+    static final int BLOCK = 1 << 12;
+
+    /** Default number of candidates kept by the first stage. */
+    static final int CANDIDATES = 16;
+
+    /** Configuration searched. */
+    private final Configuration _config;
+
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Scores of plaintexts. */
+    private final Quadgrams _quadgrams;
+
+    /** The ciphertext, as character indices. */
+    private final int[] _cipher;
+
+    /** Rotor orders searched. */
+    private final List<String[]> _orders;
+
+    /** Number of initial settings of each order. */
+    private final long _starts;
+
+    /** Number of candidates kept by the first stage. */
+    private int _candidates = CANDIDATES;
+}
@@ -0,0 +1,103 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+import static enigma.BombeTest.*;
+
+/** The suite of all JUnit tests for the Solver and Quadgrams classes.
+ *  @author Yulan Rong
+ */
+public class SolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Sample English text, in upper case without blanks. */
+    static final String SAMPLE =
+        ("THE MACHINE WAS USED BY THE NAVY TO SEND ORDERS TO SHIPS AT SEA "
+         + "AND THE OPERATORS CHANGED THE SETTINGS OF THE ROTORS EVERY DAY "
+         + "ACCORDING TO A KEY SHEET THAT WAS PRINTED IN INK THAT WOULD "
+         + "DISSOLVE IN WATER SO THAT IT COULD NOT BE CAPTURED IF THE SHIP "
+         + "WAS LOST THE CODEBREAKERS AT THE PARK WORKED IN HUTS AROUND THE "
+         + "HOUSE AND THEY READ THE WEATHER REPORTS EVERY MORNING BECAUSE "
+         + "THE REPORTS WERE SENT AT THE SAME TIME IN THE SAME FORM AND SO "
+         + "GAVE THEM THE CRIBS THEY NEEDED TO FIND THE KEY FOR THE DAY")
+        .replace(" ", "");
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkScore() {
+        Quadgrams table = Quadgrams.train(UPPER, SAMPLE);
+        int[] seen = indices("THEMACHINE"), unseen = indices("QZXJQZXJQZ");
+        assertEquals(0.0, table.score(seen, 3), 0.0);
+        assertTrue(table.score(seen, seen.length)
+                   > table.score(unseen, unseen.length));
+    }
+
+    @Test
+    public void checkWriteAndLoad() throws IOException {
+        Quadgrams table = Quadgrams.train(UPPER, SAMPLE);
+        File file = File.createTempFile("quadgrams", ".bin");
+        try {
+            table.write(file.getPath());
+            Quadgrams loaded = Quadgrams.load(UPPER, file.getPath());
+            int[] text = indices(SAMPLE);
+            assertEquals(table.score(text, text.length),
+                         loaded.score(text, text.length), 0.0);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkLoadWrongAlphabet() throws IOException {
+        File file = File.createTempFile("quadgrams", ".bin");
+        try {
+            Quadgrams.train(UPPER, SAMPLE).write(file.getPath());
+            Quadgrams.load(new Alphabet("ABCDEFGHIJKLMNOPQRSTUVWXYz"),
+                           file.getPath());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void checkSolve() {
+        Configuration config = smallConfiguration();
+        String key = "* B IV I QM (AF) (CD) (EX) (KL) (TZ)";
+        String plain = SAMPLE.substring(0, 240);
+        String cipher = encipher(config, key, plain);
+        Solver solver = new Solver(config, cipher,
+                                   Quadgrams.train(UPPER, SAMPLE));
+        solver.setCandidates(4);
+        List<Solver.Solution> solutions = solver.solve(new ForkJoinPool(2));
+        assertEquals(4, solutions.size());
+        assertEquals(key, solutions.get(0).toString());
+        assertEquals(plain,
+                     encipher(config, solutions.get(0).toString(), cipher));
+        for (int i = 1; i < solutions.size(); i += 1) {
+            assertTrue(solutions.get(i).score()
+                       <= solutions.get(i - 1).score());
+        }
+    }
+
+    /** Return the indices in UPPER of the characters of TEXT. */
+    static int[] indices(String text) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = UPPER.toInt(text.charAt(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,66 @@
+package enigma;
+
+/** The whole rotor stack and plugboard of a Machine folded into one
+ *  substitution per reachable stepping state.  A state is the list of
+ *  settings of the rotors under pawls, numbered in mixed radix with the
+ *  rightmost rotor least significant.
+ *  @author Yulan Rong
+ */
+class StateTable {
+
+    /** A table over an alphabet of SIZE characters in which stepping
+     *  from state s leads to NEXT[s], and in which character c converts
+     *  to SUBST[s * SIZE + c] when the machine is in state s.  The
+     *  table starts in state START. */
+    StateTable(int size, int[] next, char[] subst, int start) {
+        _size = size;
+        _next = next;
+        _subst = subst;
+        _state = start;
+    }
+
+    /** Return the number of bytes needed for a table of STATES states
+     *  over an alphabet of SIZE characters. */
+    static long bytesNeeded(long states, int size) {
+        return states * (Integer.BYTES + (long) size * Character.BYTES);
+    }
+
+    /** Advance to the next state and return the conversion of C (an
+     *  index in the range 0..size-1) in that state. */
+    int convert(int c) {
+        _state = _next[_state];
+        return _subst[_state * _size + c];
+    }
+
+    /** Return the state following STATE. */
+    int next(int state) {
+        return _next[state];
+    }
+
+    /** Return the conversion of C in state STATE. */
+    int substitute(int state, int c) {
+        return _subst[state * _size + c];
+    }
+
+    /** Return my current state. */
+    int state() {
+        return _state;
+    }
+
+    /** Set my current state to STATE. */
+    void setState(int state) {
+        _state = state;
+    }
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Stepping transition for each state. */
+    private final int[] _next;
+
+    /** Substitutions, one row of _size characters per state. */
+    private final char[] _subst;
+
+    /** Current state. */
+    private int _state;
+}
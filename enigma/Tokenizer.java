@@ -0,0 +1,160 @@
+package enigma;
+
+/** A single-pass reader of the whitespace-separated tokens of a
+ *  configuration file or setting line, which keeps track of line and
+ *  column numbers (from 1) so that errors can say where they are.
+ *  @author Yulan Rong
+ */
+class Tokenizer {
+
+    /** A tokenizer for TEXT, whose first line is line number LINE. */
+    Tokenizer(CharSequence text, int line) {
+        _text = text;
+        _line = line;
+        _lineStart = 0;
+        _tokenLine = line;
+        _tokenColumn = 1;
+    }
+
+    /** Return true iff any token remains, skipping the whitespace before
+     *  it. */
+    boolean hasNext() {
+        while (_pos < _text.length()
+               && Character.isWhitespace(_text.charAt(_pos))) {
+            advance();
+        }
+        return _pos < _text.length();
+    }
+
+    /** Return the next token, or throw an error saying MISSING if there
+     *  is none. */
+    String next(String missing) {
+        if (!hasNext()) {
+            markToken();
+            throw error(missing);
+        }
+        markToken();
+        int start = _pos;
+        while (_pos < _text.length()
+               && !Character.isWhitespace(_text.charAt(_pos))) {
+            _pos += 1;
+        }
+        return _text.subSequence(start, _pos).toString();
+    }
+
+    /** Return the next token as a non-negative decimal number, or throw
+     *  an error saying MISSING if there is none. */
+    int nextInt(String missing) {
+        String token = next(missing);
+        int result = 0;
+        for (int i = 0; i < token.length(); i += 1) {
+            char c = token.charAt(i);
+            if (c < '0' || c > '9' || result > (Integer.MAX_VALUE - 9) / 10) {
+                throw error("%s is not a valid number", token);
+            }
+            result = result * 10 + c - '0';
+        }
+        return result;
+    }
+
+    /** Return the rest of the current line, not including its
+     *  terminator, and move to the start of the next line. */
+    String restOfLine() {
+        markToken();
+        int start = _pos;
+        while (_pos < _text.length() && _text.charAt(_pos) != '\n'
+               && _text.charAt(_pos) != '\r') {
+            _pos += 1;
+        }
+        String result = _text.subSequence(start, _pos).toString();
+        if (_pos < _text.length() && _text.charAt(_pos) == '\r') {
+            advance();
+        }
+        if (_pos < _text.length() && _text.charAt(_pos) == '\n') {
+            advance();
+        }
+        return result;
+    }
+
+    /** Return true iff the next token, if any, looks like one or more
+     *  cycles: it begins with '(' and ends with ')' with something in
+     *  between.  If WORDS, it must moreover be a single cycle of
+     *  letters, digits and '_'. */
+    boolean nextIsCycle(boolean words) {
+        if (!hasNext() || _text.charAt(_pos) != '(') {
+            return false;
+        }
+        int end = _pos + 1;
+        boolean simple = true;
+        while (end < _text.length()
+               && !Character.isWhitespace(_text.charAt(end))) {
+            char c = _text.charAt(end);
+            simple &= c == ')' || c == '_' || c >= '0' && c <= '9'
+                || c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z';
+            end += 1;
+        }
+        if (end - _pos < 3 || _text.charAt(end - 1) != ')') {
+            return false;
+        }
+        if (!words) {
+            return true;
+        }
+        for (int i = _pos + 1; i < end - 1; i += 1) {
+            if (_text.charAt(i) == ')') {
+                return false;
+            }
+        }
+        return simple;
+    }
+
+    /** Return an exception whose message is formed from MSGFORMAT and
+     *  ARGUMENTS as for String.format, preceded by the position of the
+     *  last token read. */
+    EnigmaException error(String msgFormat, Object... arguments) {
+        return new EnigmaException(
+                String.format("line %d, column %d: ", _tokenLine,
+                              _tokenColumn)
+                + String.format(msgFormat, arguments));
+    }
+
+    /** Return an exception reporting the error EXCP at the position of
+     *  the last token read. */
+    EnigmaException error(EnigmaException excp) {
+        return error("%s", excp.getMessage());
+    }
+
+    /** Record the current position as that of the last token. */
+    private void markToken() {
+        _tokenLine = _line;
+        _tokenColumn = _pos - _lineStart + 1;
+    }
+
+    /** Move past the current character, counting lines. */
+    private void advance() {
+        char c = _text.charAt(_pos);
+        _pos += 1;
+        if (c == '\n' || c == '\r' && (_pos == _text.length()
+                                       || _text.charAt(_pos) != '\n')) {
+            _line += 1;
+            _lineStart = _pos;
+        }
+    }
+
+    /** The text being read. */
+    private final CharSequence _text;
+
+    /** Index in _text of the next character. */
+    private int _pos;
+
+    /** Number of the current line. */
+    private int _line;
+
+    /** Index in _text of the start of the current line. */
+    private int _lineStart;
+
+    /** Line of the last token read. */
+    private int _tokenLine;
+
+    /** Column of the last token read. */
+    private int _tokenColumn;
+}
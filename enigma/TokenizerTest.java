@@ -0,0 +1,83 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Tokenizer class.
+ *  @author Yulan Rong
+ */
+public class TokenizerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testTokens() {
+        Tokenizer t = new Tokenizer(" ABC DE\n 5 3\r\n I MQ (AB)(CD)\n", 1);
+        assertEquals(" ABC DE", t.restOfLine());
+        assertEquals(5, t.nextInt("slots"));
+        assertEquals(3, t.nextInt("pawls"));
+        assertEquals("", t.restOfLine());
+        assertEquals("I", t.next("name"));
+        assertEquals("MQ", t.next("type"));
+        assertTrue(t.nextIsCycle(false));
+        assertFalse(t.nextIsCycle(true));
+        assertEquals("(AB)(CD)", t.next("cycles"));
+        assertFalse(t.hasNext());
+        assertFalse(t.nextIsCycle(false));
+    }
+
+    @Test
+    public void testCycleTokens() {
+        assertTrue(new Tokenizer("(Ab_9)", 1).nextIsCycle(true));
+        assertFalse(new Tokenizer("(A.)", 1).nextIsCycle(true));
+        assertTrue(new Tokenizer("(A.)", 1).nextIsCycle(false));
+        assertFalse(new Tokenizer("()", 1).nextIsCycle(false));
+        assertFalse(new Tokenizer("(AB", 1).nextIsCycle(false));
+        assertFalse(new Tokenizer("AB)", 1).nextIsCycle(false));
+    }
+
+    @Test
+    public void testPositions() {
+        Tokenizer t = new Tokenizer("A\n  BC\r\n\tD", 7);
+        t.next("a");
+        assertEquals("line 7, column 1: x", t.error("x").getMessage());
+        t.next("b");
+        assertEquals("line 8, column 3: x", t.error("x").getMessage());
+        t.next("d");
+        assertEquals("line 9, column 2: x", t.error("x").getMessage());
+        try {
+            t.next("missing");
+            fail("no error at end");
+        } catch (EnigmaException excp) {
+            assertEquals("line 9, column 3: missing", excp.getMessage());
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadNumber() {
+        new Tokenizer("5x", 1).nextInt("number");
+    }
+
+    @Test
+    public void testSettingErrors() {
+        Machine m = MachineTest.navalMachine();
+        try {
+            Session.setUp(m, "* B Beta III III I AXLE", 4);
+            fail("repeated rotor accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage(),
+                       excp.getMessage().startsWith("line 4, column 18: "));
+        }
+        try {
+            Session.setUp(m, "* B Beta III IV I AXLE (HQ) X", 2);
+            fail("stray token accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("line 2, column 29: Wrong setting for plugboard.",
+                         excp.getMessage());
+        }
+    }
+}
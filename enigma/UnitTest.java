@@ -3,8 +3,11 @@ package enigma;
 import org.junit.Test;
 import ucb.junit.textui;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.HashSet;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static enigma.TestUtils.NAVALB;
 import static enigma.TestUtils.NAVALZ;
 import static enigma.TestUtils.NAVALA;
@@ -18,7 +21,18 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      MovingRotorTest.class,
+                                      MachineTest.class,
+                                      BombeTest.class,
+                                      CatalogTest.class,
+                                      DepthTest.class,
+                                      SolverTest.class,
+                                      ConfigCacheTest.class,
+                                      TokenizerTest.class,
+                                      KeyCacheTest.class,
+                                      CheckpointTest.class,
+                                      MappedSessionTest.class,
+                                      PipelineTest.class));
     }
 
     /** testing Alphabet. */
@@ -30,6 +44,31 @@ public class UnitTest {
         Alphabet alphabet2 = new Alphabet("ab?c.");
         assertEquals(alphabet2.size(), 3);
     }
+    @Test
+    public void testAlphabetIndex() {
+        Alphabet sparse = new Alphabet("A\u4e2d\u03b1z9\uffe1.");
+        assertEquals(6, sparse.size());
+        assertEquals(1, sparse.toInt('\u4e2d'));
+        assertEquals(2, sparse.toInt('\u03b1'));
+        assertEquals(5, sparse.toInt('.'));
+        assertEquals('z', sparse.toChar(sparse.toInt('z')));
+        assertFalse(sparse.contains('B'));
+        assertFalse(sparse.contains('\uffe1'));
+        Alphabet dense = new Alphabet("ZYX");
+        assertEquals(0, dense.toInt('Z'));
+        assertFalse(dense.contains('W'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testAlphabetAllFiltered() {
+        new Alphabet("?!- ");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testAlphabetSupplementary() {
+        new Alphabet("AB\ud835\udc00C");
+    }
+
     @Test(expected = EnigmaException.class)
     public void testAlphabetError() {
         Alphabet alphabet = new Alphabet("ABCDD");
@@ -149,6 +188,17 @@ public class UnitTest {
                         new Alphabet("YFZH")));
         machine1.convert("Y");
     }
-}
-
 
+    @Test
+    public void testGroupWriter() throws IOException {
+        StringWriter text = new StringWriter();
+        GroupWriter out = new GroupWriter(text);
+        out.write("ABC");
+        out.write("DEFGHIJ".toCharArray(), 0, 7);
+        out.endLine();
+        out.write('K');
+        out.endLine();
+        String nl = System.lineSeparator();
+        assertEquals("ABCDE FGHIJ " + nl + "K" + nl, text.toString());
+    }
+}